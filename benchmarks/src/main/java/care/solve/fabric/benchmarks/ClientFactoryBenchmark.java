@@ -0,0 +1,45 @@
+package care.solve.fabric.benchmarks;
+
+import care.solve.fabric.service.HFClientFactory;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client acquisition through {@link HFClientFactory}, cached by user and by stored user name,
+ * against building a client from scratch as the factory does on a miss.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClientFactoryBenchmark {
+
+    @Benchmark
+    public HFClient cachedByUser(SimulatedNetwork network) {
+        return network.clientFactory.getClient(network.user);
+    }
+
+    @Benchmark
+    public HFClient cachedByName(SimulatedNetwork network) {
+        return network.clientFactory.getClient(SimulatedNetwork.STORED_USER);
+    }
+
+    @Benchmark
+    public HFClient uncached(SimulatedNetwork network) throws Exception {
+        HFClient client = HFClient.createNewInstance();
+        client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+        client.setUserContext(network.user);
+
+        return client;
+    }
+}
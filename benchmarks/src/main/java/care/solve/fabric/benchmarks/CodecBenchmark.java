@@ -0,0 +1,114 @@
+package care.solve.fabric.benchmarks;
+
+import care.solve.fabric.codec.CborCodec;
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.codec.Codecs;
+import care.solve.fabric.codec.JsonCodec;
+import care.solve.fabric.codec.ProtobufCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.peer.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Argument encoding and payload decoding with the built-in codecs, against encoding to a JSON
+ * string first as callers of the {@code String[]} API do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    public static class PatientRecord {
+        public String id;
+        public String name;
+        public long birthDate;
+        public List<String> allergies;
+        public String notes;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Codec<PatientRecord> json = new JsonCodec<>(objectMapper, PatientRecord.class);
+    private final Codec<PatientRecord> cbor = new CborCodec<>(PatientRecord.class);
+    private final Codec<Query.ChaincodeInfo> protobuf = new ProtobufCodec<>(Query.ChaincodeInfo.parser());
+
+    private PatientRecord record;
+    private Query.ChaincodeInfo message;
+    private ByteString jsonPayload;
+    private ByteString cborPayload;
+    private ByteString protobufPayload;
+
+    @Setup
+    public void setUp() {
+        record = new PatientRecord();
+        record.id = "patient-000042";
+        record.name = "Jane Doe";
+        record.birthDate = 315532800000L;
+        record.allergies = Arrays.asList("penicillin", "latex");
+        record.notes = new String(new char[256]).replace('\0', 'n');
+
+        message = Query.ChaincodeInfo.newBuilder()
+                .setName(record.id)
+                .setVersion(record.name)
+                .setPath(String.join(",", record.allergies))
+                .setInput(record.notes)
+                .build();
+
+        jsonPayload = ByteString.copyFrom(Codecs.encode(json, record));
+        cborPayload = ByteString.copyFrom(Codecs.encode(cbor, record));
+        protobufPayload = message.toByteString();
+    }
+
+    @Benchmark
+    public byte[] jsonViaString() throws Exception {
+        return objectMapper.writeValueAsString(record).getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return Codecs.encode(json, record);
+    }
+
+    @Benchmark
+    public byte[] cborEncode() {
+        return Codecs.encode(cbor, record);
+    }
+
+    @Benchmark
+    public byte[] protobufEncode() {
+        return Codecs.encode(protobuf, message);
+    }
+
+    @Benchmark
+    public PatientRecord jsonDecode() {
+        return Codecs.decode(json, jsonPayload);
+    }
+
+    @Benchmark
+    public PatientRecord cborDecode() {
+        return Codecs.decode(cbor, cborPayload);
+    }
+
+    @Benchmark
+    public Query.ChaincodeInfo protobufDecode() {
+        return Codecs.decode(protobuf, protobufPayload);
+    }
+}
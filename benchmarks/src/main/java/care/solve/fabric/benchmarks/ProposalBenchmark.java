@@ -0,0 +1,66 @@
+package care.solve.fabric.benchmarks;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.peer.FabricProposal;
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.hyperledger.fabric.sdk.TransactionProposalRequest;
+import org.hyperledger.fabric.sdk.transaction.ProposalBuilder;
+import org.hyperledger.fabric.sdk.transaction.TransactionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side cost of a transaction proposal: transaction context (nonce and transaction id),
+ * proposal construction and the ECDSA signature, without any network round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProposalBenchmark {
+
+    private static final ChaincodeID CHAINCODE_ID = ChaincodeID.newBuilder()
+            .setName(SimulatedNetwork.CHAINCODE)
+            .setVersion("1.0")
+            .build();
+
+    @Benchmark
+    public FabricProposal.Proposal build(SimulatedNetwork network) throws Exception {
+        return ProposalBuilder.newBuilder()
+                .context(context(network))
+                .request(request(network))
+                .build();
+    }
+
+    @Benchmark
+    public ByteString buildAndSign(SimulatedNetwork network) throws Exception {
+        TransactionContext context = context(network);
+        FabricProposal.Proposal proposal = ProposalBuilder.newBuilder()
+                .context(context)
+                .request(request(network))
+                .build();
+
+        return context.signByteString(proposal.toByteArray());
+    }
+
+    private static TransactionContext context(SimulatedNetwork network) {
+        return new TransactionContext(network.channel, network.user, network.client.getCryptoSuite());
+    }
+
+    private static TransactionProposalRequest request(SimulatedNetwork network) {
+        TransactionProposalRequest request = network.client.newTransactionProposalRequest();
+        request.setChaincodeID(CHAINCODE_ID);
+        request.setFcn("put");
+        request.setArgs(new String[]{"key", "value"});
+
+        return request;
+    }
+}
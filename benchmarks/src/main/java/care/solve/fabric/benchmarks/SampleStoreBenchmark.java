@@ -0,0 +1,35 @@
+package care.solve.fabric.benchmarks;
+
+import care.solve.fabric.entity.SampleUser;
+import care.solve.fabric.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credential-store lookups: a raw value read and a full member restore, which deserializes
+ * the enrollment from the store file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SampleStoreBenchmark {
+
+    @Benchmark
+    public String getValue(SimulatedNetwork network) {
+        return network.store.getValue(SampleUser.toKeyValStoreName(SimulatedNetwork.STORED_USER, UserService.org));
+    }
+
+    @Benchmark
+    public SampleUser getMember(SimulatedNetwork network) {
+        return network.store.getMember(SimulatedNetwork.STORED_USER, UserService.org);
+    }
+}
@@ -0,0 +1,176 @@
+package care.solve.fabric.benchmarks;
+
+import care.solve.fabric.config.ChaincodeProperties;
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.entity.SampleStore;
+import care.solve.fabric.entity.SampleUser;
+import care.solve.fabric.service.AdmissionController;
+import care.solve.fabric.service.ChaincodeService;
+import care.solve.fabric.service.ChannelService;
+import care.solve.fabric.service.CircuitBreakers;
+import care.solve.fabric.service.EndorserSelector;
+import care.solve.fabric.service.FabricExecutors;
+import care.solve.fabric.service.HFClientFactory;
+import care.solve.fabric.service.InvokeRetrier;
+import care.solve.fabric.service.OrdererPool;
+import care.solve.fabric.service.PeerLatencyTracker;
+import care.solve.fabric.service.QueryResultCache;
+import care.solve.fabric.service.QueryRouter;
+import care.solve.fabric.service.TransactionMetrics;
+import care.solve.fabric.service.TransactionService;
+import care.solve.fabric.service.TransactionServiceImpl;
+import care.solve.fabric.service.UserService;
+import care.solve.fabric.simulator.FabricSimulator;
+import care.solve.fabric.simulator.SimulatorProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A started {@link FabricSimulator} and the library services wired against it the way
+ * {@code FabricSdkAutoConfiguration} wires them, without the certificate authority.
+ */
+@State(Scope.Benchmark)
+public class SimulatedNetwork {
+
+    static final String CHANNEL = "benchchannel";
+    static final String MSP_ID = "BenchMSP";
+    static final String CHAINCODE = "benchcc";
+    static final String STORED_USER = "stored-user";
+
+    @Param({"2"})
+    public int peers;
+
+    @Param({"0"})
+    public long endorsementLatencyMillis;
+
+    @Param({"0"})
+    public long batchTimeoutMillis;
+
+    FabricSimulator simulator;
+    SampleUser user;
+    SampleStore store;
+    HFClient client;
+    Channel channel;
+    HFClientFactory clientFactory;
+    TransactionService transactionService;
+
+    private File storeFile;
+    private ThreadPoolTaskExecutor executor;
+    private FabricExecutors fabricExecutors;
+    private ScheduledExecutorService scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimulatorProperties settings = new SimulatorProperties();
+        settings.setEndorsementLatencyMillis(endorsementLatencyMillis);
+        settings.setBatchTimeoutMillis(batchTimeoutMillis);
+        simulator = new FabricSimulator(CHANNEL, MSP_ID, peers, settings);
+        simulator.deployChaincode(CHAINCODE, "1.0", "github.com/" + CHAINCODE);
+        simulator.start();
+
+        storeFile = File.createTempFile("bench-store", ".properties");
+        store = new SampleStore(storeFile);
+        user = enroll("user", MSP_ID);
+        enroll(STORED_USER, UserService.org);
+
+        client = HFClient.createNewInstance();
+        client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+        client.setUserContext(user);
+
+        HFProperties hfProperties = hfProperties();
+        List<Peer> channelPeers = new ArrayList<>();
+        for (HFProperties.Peer peerConf : hfProperties.getOrgs().get("clinic").getPeers()) {
+            channelPeers.add(client.newPeer(peerConf.getName(), peerConf.getGrpcUrl()));
+        }
+        channel = new ChannelService(hfProperties).connectToChannel(CHANNEL, client, channelPeers,
+                Collections.singletonList(client.newOrderer("orderer", simulator.getOrdererUrl())),
+                client.newEventHub("peer0", simulator.getEventHubUrl(0)));
+
+        MetricRegistry metricRegistry = new MetricRegistry();
+        executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("fabric-tx-");
+        executor.setCorePoolSize(hfProperties.getExecutor().getMaxPoolSize());
+        executor.setMaxPoolSize(hfProperties.getExecutor().getMaxPoolSize());
+        executor.setKeepAliveSeconds(hfProperties.getExecutor().getKeepAliveSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(hfProperties.getExecutor().getQueueCapacity());
+        executor.initialize();
+        fabricExecutors = new FabricExecutors(hfProperties, metricRegistry);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        ChaincodeProperties chaincodeProperties = new ChaincodeProperties();
+        chaincodeProperties.setEndorsementPolicyFile(new File(storeFile.getParentFile(), "no-policy.yaml").getPath());
+        PeerLatencyTracker tracker = new PeerLatencyTracker();
+        TransactionMetrics transactionMetrics = new TransactionMetrics(metricRegistry);
+        CircuitBreakers circuitBreakers = new CircuitBreakers(tracker, hfProperties, metricRegistry);
+        OrdererPool ordererPool = new OrdererPool(circuitBreakers, hfProperties, metricRegistry);
+        ChaincodeService chaincodeService = new ChaincodeService(chaincodeProperties, channel, circuitBreakers, ordererPool, metricRegistry);
+
+        clientFactory = new HFClientFactory(user, store, () -> null, hfProperties, metricRegistry);
+        transactionService = new TransactionServiceImpl(clientFactory, channel, chaincodeService, executor, fabricExecutors, hfProperties,
+                new EndorserSelector(null, hfProperties, tracker),
+                circuitBreakers,
+                new QueryRouter(tracker, circuitBreakers, fabricExecutors.query(), scheduler, hfProperties),
+                ordererPool,
+                new QueryResultCache(hfProperties, metricRegistry),
+                transactionMetrics,
+                new AdmissionController(CHANNEL, hfProperties.getAdmission(), scheduler, metricRegistry),
+                new InvokeRetrier(hfProperties, scheduler, transactionMetrics));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.shutdown(true);
+        executor.shutdown();
+        fabricExecutors.shutdown();
+        scheduler.shutdownNow();
+        simulator.close();
+        storeFile.delete();
+    }
+
+    private SampleUser enroll(String name, String org) throws Exception {
+        Enrollment enrollment = simulator.enroll(name);
+
+        return store.getMember(name, org, MSP_ID, enrollment.getKey(), enrollment.getCert());
+    }
+
+    private HFProperties hfProperties() {
+        List<HFProperties.Peer> peerConfs = new ArrayList<>();
+        for (int i = 0; i < peers; i++) {
+            HFProperties.Peer peerConf = new HFProperties.Peer();
+            peerConf.setName("peer" + i);
+            peerConf.setGrpcUrl(simulator.getPeerUrl(i));
+            peerConfs.add(peerConf);
+        }
+
+        HFProperties.Organization org = new HFProperties.Organization();
+        org.setName("bench");
+        org.setMspId(MSP_ID);
+        org.setPeers(peerConfs);
+        org.setOrderers(Collections.emptyList());
+
+        HFProperties hfProperties = new HFProperties();
+        hfProperties.setOrgs(new HashMap<>(Collections.singletonMap("clinic", org)));
+
+        return hfProperties;
+    }
+}
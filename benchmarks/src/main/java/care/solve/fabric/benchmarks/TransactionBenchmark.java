@@ -0,0 +1,74 @@
+package care.solve.fabric.benchmarks;
+
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.codec.Codecs;
+import care.solve.fabric.codec.JsonCodec;
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query and invoke round trips through {@code TransactionService}: endorsement, ordering and
+ * the commit event for invokes, a single routed peer request for queries.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private static final Codec<CodecBenchmark.PatientRecord> RECORD_CODEC = new JsonCodec<>(CodecBenchmark.PatientRecord.class);
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private long sequence;
+        private String prefix;
+
+        @Setup
+        public void setUp() {
+            prefix = "key-" + Thread.currentThread().getId() + "-";
+        }
+
+        String next() {
+            return prefix + (sequence++ % 1000);
+        }
+    }
+
+    @Benchmark
+    public byte[] query(SimulatedNetwork network, Keys keys) {
+        return network.transactionService.sendQueryTransaction("get", new String[]{keys.next()});
+    }
+
+    @Benchmark
+    public ByteString queryPayload(SimulatedNetwork network, Keys keys) {
+        return network.transactionService.sendQueryTransactionPayload("get", new String[]{keys.next()});
+    }
+
+    @Benchmark
+    public byte[] invoke(SimulatedNetwork network, Keys keys) {
+        return network.transactionService.sendInvokeTransaction("put", new String[]{keys.next(), "value"});
+    }
+
+    @Benchmark
+    public ByteString invokeJson(SimulatedNetwork network, Keys keys) {
+        CodecBenchmark.PatientRecord record = new CodecBenchmark.PatientRecord();
+        record.id = keys.next();
+        return network.transactionService.sendInvokeTransaction("put", record, RECORD_CODEC, Codecs.bytes());
+    }
+
+    @Benchmark
+    public byte[] invokeAsync(SimulatedNetwork network, Keys keys) {
+        return network.transactionService.sendInvokeTransactionAsync("put", new String[]{keys.next(), "value"}).join();
+    }
+}
@@ -0,0 +1,116 @@
+package care.solve.fabric.loadgen;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dropwizard reservoir recording every timer update into an HdrHistogram, so phase timers report
+ * exact tail percentiles instead of the samples of the default exponentially decaying reservoir.
+ * Values are the timer's nanoseconds, tracked up to a minute with three significant digits.
+ */
+public class HdrHistogramReservoir implements Reservoir {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+    @Override
+    public void update(long value) {
+        recorder.recordValue(Math.min(value, HIGHEST_TRACKABLE_NANOS));
+    }
+
+    /**
+     * @return a copy of everything recorded since the last {@link #reset()}
+     */
+    public synchronized Histogram getHistogram() {
+        total.add(recorder.getIntervalHistogram());
+
+        return total.copy();
+    }
+
+    public synchronized void reset() {
+        recorder.reset();
+        total.reset();
+    }
+
+    @Override
+    public int size() {
+        return (int) getHistogram().getTotalCount();
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return new HistogramSnapshot(getHistogram());
+    }
+
+    private static class HistogramSnapshot extends Snapshot {
+
+        private final Histogram histogram;
+
+        HistogramSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        @Override
+        public long[] getValues() {
+            long[] values = new long[size()];
+            int i = 0;
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+                for (long n = 0; n < value.getCountAtValueIteratedTo() && i < values.length; n++) {
+                    values[i++] = histogram.highestEquivalentValue(value.getValueIteratedTo());
+                }
+            }
+
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) histogram.getTotalCount();
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            for (long value : getValues()) {
+                writer.println(value);
+            }
+            writer.flush();
+        }
+    }
+}
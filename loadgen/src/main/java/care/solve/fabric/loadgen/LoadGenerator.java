@@ -0,0 +1,247 @@
+package care.solve.fabric.loadgen;
+
+import care.solve.fabric.service.KeyAffinityScheduler;
+import care.solve.fabric.service.TransactionService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends the configured mix of queries and invokes through the asynchronous
+ * {@link TransactionService} calls for a warm-up and a measured period. End-to-end latency is
+ * recorded per operation type, failures are counted by operation and root cause; only
+ * transactions sent during the measured period count. Invokes go through the
+ * {@link KeyAffinityScheduler}, tagged with their {@code {key}} arguments, when
+ * {@code fabric.key-affinity.enabled} is set.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final char[] VALUE_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final Pattern STATUS = Pattern.compile("status (\\d+)");
+
+    private final TransactionService transactionService;
+    private final KeyAffinityScheduler keyAffinityScheduler;
+    private final LoadGeneratorProperties properties;
+    private final PhaseHistograms phaseHistograms;
+    private final List<LoadGeneratorProperties.Operation> operations;
+    private final int totalWeight;
+
+    private final Map<LoadGeneratorProperties.Type, Recorder> recorders = new EnumMap<>(LoadGeneratorProperties.Type.class);
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAccumulator lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public LoadGenerator(TransactionService transactionService, KeyAffinityScheduler keyAffinityScheduler,
+                         LoadGeneratorProperties properties, PhaseHistograms phaseHistograms) {
+        this.transactionService = transactionService;
+        this.keyAffinityScheduler = keyAffinityScheduler;
+        this.properties = properties;
+        this.phaseHistograms = phaseHistograms;
+        this.operations = properties.getMix().isEmpty() ? defaultMix() : properties.getMix();
+        this.totalWeight = operations.stream().mapToInt(LoadGeneratorProperties.Operation::getWeight).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("The operation mix needs a positive total weight");
+        }
+
+        for (LoadGeneratorProperties.Type type : LoadGeneratorProperties.Type.values()) {
+            recorders.put(type, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+        }
+    }
+
+    public LoadReport run() throws InterruptedException {
+        int concurrency = properties.getConcurrency();
+        Semaphore permits = new Semaphore(concurrency);
+        long intervalNanos = properties.getRate() > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / properties.getRate()) : 0;
+
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(properties.getWarmupSeconds());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(properties.getDurationSeconds());
+        logger.info("Sending {} operation(s) for {} s after {} s warm-up, {}", operations.size(),
+                properties.getDurationSeconds(), properties.getWarmupSeconds(),
+                intervalNanos > 0 ? "at " + properties.getRate() + " tx/s, at most " + concurrency + " in flight" : concurrency + " in flight");
+
+        boolean measuring = false;
+        long next = start;
+        while (true) {
+            long intended;
+            if (intervalNanos > 0) {
+                intended = next;
+                next += intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                parkUntil(intended);
+                // a saturated network delays the send, which the latency measured from the intended time shows
+                permits.acquire();
+            } else {
+                permits.acquire();
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    permits.release();
+                    break;
+                }
+            }
+
+            if (!measuring && intended >= measureStart) {
+                reset();
+                measuring = true;
+            }
+            send(pick(), intended, measuring, permits);
+        }
+
+        if (!permits.tryAcquire(concurrency, properties.getDrainTimeoutSeconds(), TimeUnit.SECONDS)) {
+            logger.warn("{} transactions still in flight after {} s, reporting without them",
+                    concurrency - permits.availablePermits(), properties.getDrainTimeoutSeconds());
+        }
+
+        Map<String, Histogram> operationHistograms = new LinkedHashMap<>();
+        recorders.forEach((type, recorder) -> operationHistograms.put(type.name().toLowerCase(), recorder.getIntervalHistogram()));
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((error, count) -> errorCounts.put(error, count.sum()));
+
+        return new LoadReport(properties, operations,
+                Math.max(end, lastCompletion.get()) - measureStart,
+                sent.sum(), succeeded.sum(), failed.sum(), errorCounts,
+                operationHistograms, phaseHistograms.getHistograms());
+    }
+
+    private void send(LoadGeneratorProperties.Operation operation, long intended, boolean measured, Semaphore permits) {
+        CompletableFuture<byte[]> future;
+        try {
+            List<String> keys = new ArrayList<>(1);
+            String[] args = args(operation, keys);
+            if (operation.getType() == LoadGeneratorProperties.Type.QUERY) {
+                future = transactionService.sendQueryTransactionAsync(operation.getFunction(), args);
+            } else if (keyAffinityScheduler == null) {
+                future = transactionService.sendInvokeTransactionAsync(operation.getFunction(), args);
+            } else {
+                future = keyAffinityScheduler.sendInvokeTransactionAsync(keys, operation.getFunction(), args);
+            }
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        if (measured) {
+            sent.increment();
+        }
+        future.whenComplete((payload, failure) -> {
+            long now = System.nanoTime();
+            if (measured) {
+                if (failure == null) {
+                    recorders.get(operation.getType()).recordValue(Math.min(now - intended, HIGHEST_TRACKABLE_NANOS));
+                    succeeded.increment();
+                } else {
+                    errors.computeIfAbsent(errorKey(operation, failure), key -> new LongAdder()).increment();
+                    failed.increment();
+                }
+                lastCompletion.accumulate(now);
+            }
+            permits.release();
+        });
+    }
+
+    private void reset() {
+        recorders.values().forEach(Recorder::reset);
+        phaseHistograms.reset();
+    }
+
+    private LoadGeneratorProperties.Operation pick() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (LoadGeneratorProperties.Operation operation : operations) {
+            point -= operation.getWeight();
+            if (point < 0) {
+                return operation;
+            }
+        }
+
+        return operations.get(operations.size() - 1);
+    }
+
+    private String[] args(LoadGeneratorProperties.Operation operation, List<String> keys) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] args = new String[operation.getArgs().size()];
+        for (int i = 0; i < args.length; i++) {
+            String arg = operation.getArgs().get(i);
+            if (arg.contains("{key}")) {
+                String key = "key" + random.nextInt(properties.getKeyCount());
+                keys.add(key);
+                arg = arg.replace("{key}", key);
+            }
+            if (arg.contains("{value}")) {
+                char[] value = new char[properties.getValueSize()];
+                for (int c = 0; c < value.length; c++) {
+                    value[c] = VALUE_CHARS[random.nextInt(VALUE_CHARS.length)];
+                }
+                arg = arg.replace("{value}", new String(value));
+            }
+            args[i] = arg;
+        }
+
+        return args;
+    }
+
+    private static String errorKey(LoadGeneratorProperties.Operation operation, Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+
+        String key = operation.getType().name().toLowerCase() + " " + operation.getFunction() + ": " + cause.getClass().getSimpleName();
+        Matcher status = STATUS.matcher(String.valueOf(cause.getMessage()));
+        // keeps e.g. MVCC conflicts (status 11) apart from other invalid transactions
+        return status.find() ? key + " " + status.group() : key;
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static List<LoadGeneratorProperties.Operation> defaultMix() {
+        LoadGeneratorProperties.Operation query = new LoadGeneratorProperties.Operation();
+        query.setType(LoadGeneratorProperties.Type.QUERY);
+        query.setFunction("get");
+        query.setArgs(Collections.singletonList("{key}"));
+        query.setWeight(4);
+
+        LoadGeneratorProperties.Operation invoke = new LoadGeneratorProperties.Operation();
+        invoke.setType(LoadGeneratorProperties.Type.INVOKE);
+        invoke.setFunction("put");
+        invoke.setArgs(Arrays.asList("{key}", "{value}"));
+        invoke.setWeight(1);
+
+        List<LoadGeneratorProperties.Operation> mix = new ArrayList<>();
+        mix.add(query);
+        mix.add(invoke);
+
+        return mix;
+    }
+}
@@ -0,0 +1,56 @@
+package care.solve.fabric.loadgen;
+
+import care.solve.fabric.service.KeyAffinityScheduler;
+import care.solve.fabric.service.TransactionService;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.io.File;
+
+/**
+ * Connects through the regular auto-configuration, so the {@code fabric.*} properties pick the
+ * network: a real one, a simulator process, or an in-process simulator with
+ * {@code fabric.simulator.enabled=true}. Runs one load test, prints the JSON summary, writes the
+ * report to {@code loadgen.output-dir} and exits non-zero when nothing succeeded.
+ */
+@SpringBootApplication
+@EnableConfigurationProperties(LoadGeneratorProperties.class)
+public class LoadGeneratorApplication {
+
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean
+    public PhaseHistograms phaseHistograms(MetricRegistry metricRegistry) {
+        return new PhaseHistograms(metricRegistry);
+    }
+
+    @Bean
+    public LoadGenerator loadGenerator(TransactionService transactionService,
+                                       ObjectProvider<KeyAffinityScheduler> keyAffinityScheduler,
+                                       LoadGeneratorProperties properties,
+                                       PhaseHistograms phaseHistograms) {
+        return new LoadGenerator(transactionService, keyAffinityScheduler.getIfAvailable(), properties, phaseHistograms);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadGeneratorApplication.class)
+                .web(false)
+                .run(args);
+
+        LoadReport report = context.getBean(LoadGenerator.class).run();
+        report.write(new File(context.getBean(LoadGeneratorProperties.class).getOutputDir()));
+        System.out.println(report.toJson());
+
+        int exitCode = report.getSucceeded() > 0 ? 0 : 1;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
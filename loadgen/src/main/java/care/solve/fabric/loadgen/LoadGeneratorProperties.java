@@ -0,0 +1,42 @@
+package care.solve.fabric.loadgen;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What to send and how hard. With a {@code rate} the generator runs open loop and measures
+ * latency from the intended send time, so a stalled network shows up in the percentiles instead of
+ * silently lowering the rate; without one it keeps {@code concurrency} transactions in flight.
+ *
+ * Operation arguments may contain {@code {key}}, replaced by one of {@code keyCount} keys picked
+ * uniformly, and {@code {value}}, replaced by {@code valueSize} random characters.
+ */
+@ConfigurationProperties(prefix = "loadgen")
+@Data
+public class LoadGeneratorProperties {
+
+    public enum Type {
+        QUERY, INVOKE
+    }
+
+    @Data
+    public static class Operation {
+        private Type type;
+        private String function;
+        private List<String> args = new ArrayList<>();
+        private int weight = 1;
+    }
+
+    private List<Operation> mix = new ArrayList<>();
+    private double rate = 0;
+    private int concurrency = 16;
+    private long warmupSeconds = 10;
+    private long durationSeconds = 60;
+    private long drainTimeoutSeconds = 60;
+    private int keyCount = 1000;
+    private int valueSize = 32;
+    private String outputDir = "loadgen-results";
+}
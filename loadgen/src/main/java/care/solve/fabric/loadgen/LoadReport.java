@@ -0,0 +1,126 @@
+package care.solve.fabric.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a load run: achieved throughput, latency percentiles in milliseconds per operation
+ * type and per transaction phase, and failures by cause. {@link #write(File)} stores every
+ * histogram as HdrHistogram percentile output ({@code <name>.hgrm}, values in milliseconds) next to
+ * a {@code summary.json}.
+ */
+public class LoadReport {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadGeneratorProperties properties;
+    private final List<LoadGeneratorProperties.Operation> operations;
+    private final long elapsedNanos;
+    private final long sent;
+    private final long succeeded;
+    private final long failed;
+    private final Map<String, Long> errors;
+    private final Map<String, Histogram> operationHistograms;
+    private final Map<String, Histogram> phaseHistograms;
+
+    LoadReport(LoadGeneratorProperties properties, List<LoadGeneratorProperties.Operation> operations, long elapsedNanos,
+               long sent, long succeeded, long failed, Map<String, Long> errors,
+               Map<String, Histogram> operationHistograms, Map<String, Histogram> phaseHistograms) {
+        this.properties = properties;
+        this.operations = operations;
+        this.elapsedNanos = elapsedNanos;
+        this.sent = sent;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.errors = errors;
+        this.operationHistograms = operationHistograms;
+        this.phaseHistograms = phaseHistograms;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public Map<String, Object> getSummary() {
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("rate", properties.getRate());
+        settings.put("concurrency", properties.getConcurrency());
+        settings.put("warmupSeconds", properties.getWarmupSeconds());
+        settings.put("durationSeconds", properties.getDurationSeconds());
+        settings.put("mix", operations);
+
+        Map<String, Object> operationStats = new LinkedHashMap<>();
+        operationHistograms.forEach((name, histogram) -> {
+            Map<String, Object> stats = stats(histogram);
+            stats.put("tps", histogram.getTotalCount() / elapsedSeconds);
+            operationStats.put(name, stats);
+        });
+        Map<String, Object> phaseStats = new LinkedHashMap<>();
+        phaseHistograms.forEach((name, histogram) -> phaseStats.put(name, stats(histogram)));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("settings", settings);
+        summary.put("elapsedSeconds", elapsedSeconds);
+        summary.put("sent", sent);
+        summary.put("succeeded", succeeded);
+        summary.put("failed", failed);
+        summary.put("tps", succeeded / elapsedSeconds);
+        summary.put("operations", operationStats);
+        summary.put("phases", phaseStats);
+        summary.put("errors", errors);
+
+        return summary;
+    }
+
+    public String toJson() throws IOException {
+        return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(getSummary());
+    }
+
+    public void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Cannot create %s", directory));
+        }
+
+        for (Map.Entry<String, Histogram> entry : operationHistograms.entrySet()) {
+            writeHistogram(new File(directory, entry.getKey() + ".hgrm"), entry.getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : phaseHistograms.entrySet()) {
+            writeHistogram(new File(directory, "phase-" + entry.getKey() + ".hgrm"), entry.getValue());
+        }
+        try (PrintStream out = new PrintStream(new File(directory, "summary.json"), "UTF-8")) {
+            out.println(toJson());
+        }
+    }
+
+    private static void writeHistogram(File file, Histogram histogram) throws IOException {
+        try (PrintStream out = new PrintStream(file, "UTF-8")) {
+            histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+        }
+    }
+
+    private static Map<String, Object> stats(Histogram histogram) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getTotalCount());
+        if (histogram.getTotalCount() > 0) {
+            stats.put("mean", histogram.getMean() / NANOS_PER_MILLI);
+            stats.put("p50", histogram.getValueAtPercentile(50) / NANOS_PER_MILLI);
+            stats.put("p95", histogram.getValueAtPercentile(95) / NANOS_PER_MILLI);
+            stats.put("p99", histogram.getValueAtPercentile(99) / NANOS_PER_MILLI);
+            stats.put("p999", histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI);
+            stats.put("max", histogram.getMaxValue() / NANOS_PER_MILLI);
+        }
+
+        return stats;
+    }
+}
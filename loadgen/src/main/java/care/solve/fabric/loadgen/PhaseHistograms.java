@@ -0,0 +1,41 @@
+package care.solve.fabric.loadgen;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.HdrHistogram.Histogram;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registers HdrHistogram-backed timers under the names {@code TransactionMetrics} records the
+ * endorsement, ordering, commit and query phases with. They must be registered before the first
+ * transaction, otherwise the registry already holds default timers under those names.
+ */
+public class PhaseHistograms {
+
+    private static final List<String> PHASES = Arrays.asList("endorse", "order", "commit", "query");
+
+    private final Map<String, HdrHistogramReservoir> reservoirs = new LinkedHashMap<>();
+
+    public PhaseHistograms(MetricRegistry metricRegistry) {
+        for (String phase : PHASES) {
+            HdrHistogramReservoir reservoir = new HdrHistogramReservoir();
+            metricRegistry.register(MetricRegistry.name("fabric.tx", phase), new Timer(reservoir));
+            reservoirs.put(phase, reservoir);
+        }
+    }
+
+    public void reset() {
+        reservoirs.values().forEach(HdrHistogramReservoir::reset);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        reservoirs.forEach((phase, reservoir) -> histograms.put(phase, reservoir.getHistogram()));
+
+        return histograms;
+    }
+}
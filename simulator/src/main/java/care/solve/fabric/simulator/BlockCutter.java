@@ -0,0 +1,66 @@
+package care.solve.fabric.simulator;
+
+import org.hyperledger.fabric.protos.common.Common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches ordered envelopes into blocks like the solo orderer: a block is cut once it holds
+ * {@code batchSize} envelopes or {@code batchTimeoutMillis} after its first envelope arrived,
+ * whichever comes first. A timeout of zero cuts a block per envelope.
+ */
+class BlockCutter {
+
+    private final SimulatedLedger ledger;
+    private final int batchSize;
+    private final long batchTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor committer;
+
+    private List<Common.Envelope> pending = new ArrayList<>();
+    private ScheduledFuture<?> timeout;
+    private long batch;
+
+    BlockCutter(SimulatedLedger ledger, int batchSize, long batchTimeoutMillis,
+                ScheduledExecutorService scheduler, Executor committer) {
+        this.ledger = ledger;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        this.scheduler = scheduler;
+        this.committer = committer;
+    }
+
+    synchronized void order(Common.Envelope envelope) {
+        pending.add(envelope);
+        if (pending.size() >= batchSize || batchTimeoutMillis <= 0) {
+            cut();
+        } else if (pending.size() == 1) {
+            long timedOutBatch = batch;
+            timeout = scheduler.schedule(() -> cutOnTimeout(timedOutBatch), batchTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void cutOnTimeout(long timedOutBatch) {
+        // the timer may fire after its batch was already cut for being full
+        if (timedOutBatch == batch && !pending.isEmpty()) {
+            cut();
+        }
+    }
+
+    private void cut() {
+        List<Common.Envelope> envelopes = pending;
+        pending = new ArrayList<>();
+        batch++;
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+
+        committer.execute(() -> ledger.commit(envelopes));
+    }
+}
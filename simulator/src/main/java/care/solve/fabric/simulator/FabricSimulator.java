@@ -0,0 +1,309 @@
+package care.solve.fabric.simulator;
+
+import care.solve.fabric.config.HFProperties;
+import com.google.protobuf.ByteString;
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import org.hyperledger.fabric.protos.peer.Query;
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stand-in for a Fabric network: gRPC peers serving the endorser and event hub
+ * services and orderers serving broadcast and deliver over {@link SimulatedLedger}s.
+ * Endorsement latency, failure rate and block cutting follow {@link SimulatorProperties}; the
+ * servers speak TLS when it names a certificate and key, plaintext otherwise. Each channel has a
+ * ledger and block cutter of its own.
+ *
+ * Built from {@link HFProperties} it listens on the ports of the configured peer, event hub,
+ * orderer and CA URLs, with one simulated MSP per organization and a channel for
+ * {@code fabric.channel} and each of {@code fabric.channels}, so an application pointed at those
+ * URLs runs unchanged, and the configured chaincode is deployed up front. Built
+ * programmatically it picks free ports:
+ *
+ * <pre>
+ * FabricSimulator simulator = new FabricSimulator("mychannel", "Org1MSP", 2);
+ * simulator.deployChaincode("mycc", "1.0", "github.com/mycc");
+ * simulator.start();
+ * HFClient.newPeer("peer0", simulator.getPeerUrl(0)) ...
+ * </pre>
+ */
+public class FabricSimulator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FabricSimulator.class);
+
+    private final SimulatorProperties settings;
+    private final Map<String, SimulatedMsp> msps = new LinkedHashMap<>();
+    private final Map<String, SimulatedLedger> ledgers = new LinkedHashMap<>();
+    private final Map<String, BlockCutter> blockCutters = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService committer;
+
+    private final List<PeerNode> peers = new ArrayList<>();
+    private final Set<Integer> ordererPorts = new LinkedHashSet<>();
+    private final Map<Integer, SimulatedMsp> caPorts = new LinkedHashMap<>();
+
+    private final List<Server> ordererServers = new ArrayList<>();
+    private final List<SimulatedCa> cas = new ArrayList<>();
+
+    public FabricSimulator(String channelName, String mspId, int peerCount) {
+        this(channelName, mspId, peerCount, new SimulatorProperties());
+    }
+
+    public FabricSimulator(String channelName, String mspId, int peerCount, SimulatorProperties settings) {
+        this(Collections.singletonList(channelName), mspId, peerCount, settings);
+    }
+
+    public FabricSimulator(List<String> channelNames, String mspId, int peerCount, SimulatorProperties settings) {
+        this(channelNames, Collections.singletonList(mspId), settings);
+
+        for (int i = 0; i < peerCount; i++) {
+            peers.add(new PeerNode(msps.get(mspId), 0, 0));
+        }
+        ordererPorts.add(0);
+    }
+
+    public FabricSimulator(HFProperties hfProperties, SimulatorProperties settings) {
+        this(channelNames(hfProperties),
+                hfProperties.getOrgs().values().stream().map(HFProperties.Organization::getMspId).collect(Collectors.toList()),
+                settings);
+
+        for (HFProperties.Organization org : hfProperties.getOrgs().values()) {
+            SimulatedMsp msp = msps.get(org.getMspId());
+            for (HFProperties.Peer peer : nullToEmpty(org.getPeers())) {
+                int port = port(peer.getGrpcUrl());
+                int eventHubPort = peer.getEventHub() == null ? port : port(peer.getEventHub().getGrpcUrl());
+                peers.add(new PeerNode(msp, port, eventHubPort));
+            }
+            for (HFProperties.Orderer orderer : nullToEmpty(org.getOrderers())) {
+                ordererPorts.add(port(orderer.getGrpcUrl()));
+            }
+            if (org.getCa() != null && org.getCa().getUrl() != null) {
+                caPorts.put(port(org.getCa().getUrl()), msp);
+            }
+        }
+
+        if (settings.getChaincodeName() != null) {
+            String path = settings.getChaincodePath() == null ? settings.getChaincodeName() : settings.getChaincodePath();
+            deployChaincode(settings.getChaincodeName(), settings.getChaincodeVersion(), path);
+        }
+    }
+
+    private FabricSimulator(Collection<String> channelNames, Collection<String> mspIds, SimulatorProperties settings) {
+        this.settings = settings;
+        mspIds.forEach(mspId -> msps.computeIfAbsent(mspId, SimulatedMsp::new));
+
+        CustomizableThreadFactory schedulerThreadFactory = new CustomizableThreadFactory("fabric-simulator-scheduler-");
+        schedulerThreadFactory.setDaemon(true);
+        this.scheduler = Executors.newScheduledThreadPool(2, schedulerThreadFactory);
+
+        CustomizableThreadFactory committerThreadFactory = new CustomizableThreadFactory("fabric-simulator-committer-");
+        committerThreadFactory.setDaemon(true);
+        this.committer = Executors.newSingleThreadExecutor(committerThreadFactory);
+
+        for (String channelName : channelNames) {
+            SimulatedLedger ledger = new SimulatedLedger(channelName, msps.values());
+            ledgers.put(channelName, ledger);
+            blockCutters.put(channelName, new BlockCutter(ledger, settings.getBatchSize(), settings.getBatchTimeoutMillis(), scheduler, committer));
+        }
+    }
+
+    private static List<String> channelNames(HFProperties hfProperties) {
+        Set<String> channelNames = new LinkedHashSet<>();
+        channelNames.add(hfProperties.getChannel().getName());
+        channelNames.addAll(hfProperties.getChannels().keySet());
+
+        return new ArrayList<>(channelNames);
+    }
+
+    /**
+     * Makes the chaincode show up as instantiated on every channel without going through install
+     * and instantiate.
+     */
+    public void deployChaincode(String name, String version, String path) {
+        ByteString chaincodeInfo = Query.ChaincodeInfo.newBuilder()
+                .setName(name)
+                .setVersion(version)
+                .setPath(path)
+                .build()
+                .toByteString();
+        ledgers.values().forEach(ledger -> ledger.putState(SimulatedEndorser.LSCC, name, chaincodeInfo));
+    }
+
+    public synchronized void start() throws IOException {
+        for (PeerNode peer : peers) {
+            SimulatedEventHub eventHub = new SimulatedEventHub(ledgers.values());
+            SimulatedEndorser endorser = new SimulatedEndorser(peer.msp, ledgers, settings, scheduler);
+            if (peer.eventHubPort == peer.port) {
+                peer.server = startServer(peer.port, endorser, eventHub);
+            } else {
+                peer.server = startServer(peer.port, endorser);
+                peer.eventHubServer = startServer(peer.eventHubPort, eventHub);
+            }
+        }
+        for (int port : ordererPorts) {
+            ordererServers.add(startServer(port, new SimulatedOrderer(ledgers, blockCutters)));
+        }
+        for (Map.Entry<Integer, SimulatedMsp> ca : caPorts.entrySet()) {
+            SimulatedCa simulatedCa = new SimulatedCa(ca.getValue(), ca.getKey());
+            simulatedCa.start();
+            cas.add(simulatedCa);
+        }
+
+        logger.info("Simulating channels {} of {} with {} peers, {} orderers and {} CAs",
+                ledgers.keySet(), msps.keySet(), peers.size(), ordererServers.size(), cas.size());
+    }
+
+    private Server startServer(int port, BindableService... services) throws IOException {
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port);
+        if (settings.getTlsCertFile() != null) {
+            builder.useTransportSecurity(new File(settings.getTlsCertFile()), new File(settings.getTlsKeyFile()));
+        }
+        for (BindableService service : services) {
+            builder.addService(service);
+        }
+
+        return builder.build().start();
+    }
+
+    public String getPeerUrl(int index) {
+        return url(peers.get(index).server);
+    }
+
+    public String getEventHubUrl(int index) {
+        PeerNode peer = peers.get(index);
+
+        return url(peer.eventHubServer == null ? peer.server : peer.eventHubServer);
+    }
+
+    public String getOrdererUrl() {
+        return url(ordererServers.get(0));
+    }
+
+    /**
+     * @return the MSP id of the first organization
+     */
+    public String getMspId() {
+        return msps.keySet().iterator().next();
+    }
+
+    /**
+     * Issues a client identity of the first organization.
+     */
+    public Enrollment enroll(String name) {
+        return msps.values().iterator().next().enroll(name);
+    }
+
+    public Enrollment enroll(String mspId, String name) {
+        return msps.get(mspId).enroll(name);
+    }
+
+    /**
+     * @return the ledger of the first channel
+     */
+    public SimulatedLedger getLedger() {
+        return ledgers.values().iterator().next();
+    }
+
+    public SimulatedLedger getLedger(String channelName) {
+        return ledgers.get(channelName);
+    }
+
+    /**
+     * Blocks until the servers are shut down by {@link #close()}.
+     */
+    public void awaitTermination() throws InterruptedException {
+        for (Server server : servers()) {
+            server.awaitTermination();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        List<Server> servers = servers();
+        servers.forEach(Server::shutdownNow);
+        cas.forEach(SimulatedCa::close);
+        scheduler.shutdownNow();
+        committer.shutdownNow();
+
+        try {
+            for (Server server : servers) {
+                server.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized List<Server> servers() {
+        List<Server> servers = new ArrayList<>();
+        for (PeerNode peer : peers) {
+            if (peer.server != null) {
+                servers.add(peer.server);
+            }
+            if (peer.eventHubServer != null) {
+                servers.add(peer.eventHubServer);
+            }
+        }
+        servers.addAll(ordererServers);
+
+        return servers;
+    }
+
+    private String url(Server server) {
+        return (settings.getTlsCertFile() == null ? "grpc" : "grpcs") + "://localhost:" + server.getPort();
+    }
+
+    private static int port(String url) {
+        int port = URI.create(url).getPort();
+        if (port < 0) {
+            throw new IllegalArgumentException(String.format("No port in %s", url));
+        }
+
+        return port;
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * A simulated peer; the event hub shares the endorser's server when both ports are equal.
+     */
+    private static class PeerNode {
+
+        private final SimulatedMsp msp;
+        private final int port;
+        private final int eventHubPort;
+
+        private Server server;
+        private Server eventHubServer;
+
+        PeerNode(SimulatedMsp msp, int port, int eventHubPort) {
+            this.msp = msp;
+            this.port = port;
+            this.eventHubPort = eventHubPort;
+        }
+    }
+}
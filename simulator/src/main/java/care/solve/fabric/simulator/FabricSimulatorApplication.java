@@ -0,0 +1,29 @@
+package care.solve.fabric.simulator;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Runs the {@link FabricSimulator} as a process of its own, reading the {@code fabric.*}
+ * properties an application uses, so the application can be load-tested against it unchanged:
+ *
+ * <pre>
+ * java -jar simulator/target/fabric-simulator-exec.jar \
+ *     --spring.config.location=application.yml --fabric.simulator.endorsement-latency-millis=20
+ * </pre>
+ */
+@Configuration
+@Import(SimulatorAutoConfiguration.class)
+public class FabricSimulatorApplication {
+
+    public static void main(String[] args) throws InterruptedException {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FabricSimulatorApplication.class)
+                .web(false)
+                .properties("fabric.simulator.enabled=true")
+                .run(args);
+
+        context.getBean(FabricSimulator.class).awaitTermination();
+    }
+}
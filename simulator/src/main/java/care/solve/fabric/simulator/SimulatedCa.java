@@ -0,0 +1,98 @@
+package care.solve.fabric.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Plain HTTP stand-in for the enroll and register endpoints of a fabric-ca server. Every request
+ * succeeds: registrations get a random secret and enrollments get the CSR key certified by the
+ * organization root, whatever the credentials.
+ */
+public class SimulatedCa implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedCa.class);
+
+    private final SimulatedMsp msp;
+    private final HttpServer server;
+
+    public SimulatedCa(SimulatedMsp msp, int port) throws IOException {
+        this.msp = msp;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/api/v1/enroll", exchange -> handle(exchange, this::enroll));
+        server.createContext("/api/v1/register", exchange -> handle(exchange, request -> Json.createObjectBuilder()
+                .add("secret", UUID.randomUUID().toString())));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private JsonObjectBuilder enroll(JsonObject request) throws IOException, GeneralSecurityException {
+        PKCS10CertificationRequest csr;
+        try (PEMParser parser = new PEMParser(new StringReader(request.getString("certificate_request")))) {
+            csr = (PKCS10CertificationRequest) parser.readObject();
+        }
+        String cert = msp.issue(csr.getSubject(), new JcaPKCS10CertificationRequest(csr).getPublicKey(), false);
+
+        return Json.createObjectBuilder()
+                .add("Cert", Base64.getEncoder().encodeToString(cert.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        int status = 200;
+        JsonObjectBuilder response = Json.createObjectBuilder();
+        try (JsonReader reader = Json.createReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            response.add("success", true)
+                    .add("result", handler.handle(reader.readObject()))
+                    .add("errors", Json.createArrayBuilder())
+                    .add("messages", Json.createArrayBuilder());
+        } catch (Exception e) {
+            logger.warn("Simulated CA of {} cannot serve {}", msp.getMspId(), exchange.getRequestURI(), e);
+            status = 500;
+            response.add("success", false)
+                    .add("errors", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                            .add("code", 0)
+                            .add("message", String.valueOf(e.getMessage()))));
+        }
+
+        byte[] body = response.build().toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private interface Handler {
+        JsonObjectBuilder handle(JsonObject request) throws Exception;
+    }
+}
@@ -0,0 +1,394 @@
+package care.solve.fabric.simulator;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Timestamp;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.common.Ledger;
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.protos.peer.Chaincode;
+import org.hyperledger.fabric.protos.peer.EndorserGrpc;
+import org.hyperledger.fabric.protos.peer.FabricProposal;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse;
+import org.hyperledger.fabric.protos.peer.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Endorser service of a simulated peer.
+ *
+ * User chaincodes behave as a key-value store addressed by the first argument: with a second
+ * argument the proposal writes it as the new value, otherwise it reads the current value. Both
+ * return the value as payload. {@code getRange} with a start key, an end key, a page size and a
+ * bookmark returns a page of {@code {"key", "value"}} items in the paged query format of
+ * {@code TransactionService}. The lifecycle, configuration and query system chaincodes answer
+ * the calls the SDK makes when connecting to a channel and deploying chaincode. Each proposal
+ * runs against the ledger of the channel it names.
+ *
+ * Responses are delayed by the configured endorsement latency plus a uniformly distributed jitter,
+ * and user chaincode proposals fail with status 500 at the configured failure rate.
+ */
+public class SimulatedEndorser extends EndorserGrpc.EndorserImplBase {
+
+    static final String LSCC = "lscc";
+
+    private static final String CSCC = "cscc";
+    private static final String QSCC = "qscc";
+    private static final String GET_RANGE = "getRange";
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedEndorser.class);
+
+    private final SimulatedMsp msp;
+    private final Map<String, SimulatedLedger> ledgers;
+    private final SimulatorProperties settings;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Query.ChaincodeInfo> installed = new ConcurrentHashMap<>();
+
+    SimulatedEndorser(SimulatedMsp msp, Map<String, SimulatedLedger> ledgers, SimulatorProperties settings, ScheduledExecutorService scheduler) {
+        this.msp = msp;
+        this.ledgers = ledgers;
+        this.settings = settings;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void processProposal(FabricProposal.SignedProposal signedProposal, StreamObserver<FabricProposalResponse.ProposalResponse> responseObserver) {
+        FabricProposalResponse.ProposalResponse response;
+        try {
+            response = endorse(signedProposal);
+        } catch (InvalidProtocolBufferException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        long latency = settings.getEndorsementLatencyMillis();
+        if (settings.getEndorsementJitterMillis() > 0) {
+            latency += ThreadLocalRandom.current().nextLong(settings.getEndorsementJitterMillis() + 1);
+        }
+        if (latency > 0) {
+            scheduler.schedule(() -> reply(responseObserver, response), latency, TimeUnit.MILLISECONDS);
+        } else {
+            reply(responseObserver, response);
+        }
+    }
+
+    private static void reply(StreamObserver<FabricProposalResponse.ProposalResponse> responseObserver,
+                              FabricProposalResponse.ProposalResponse response) {
+        try {
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            // the client gave up waiting
+            logger.debug("Cannot send proposal response", e);
+        }
+    }
+
+    FabricProposalResponse.ProposalResponse endorse(FabricProposal.SignedProposal signedProposal) throws InvalidProtocolBufferException {
+        FabricProposal.Proposal proposal = FabricProposal.Proposal.parseFrom(signedProposal.getProposalBytes());
+        Common.Header header = Common.Header.parseFrom(proposal.getHeader());
+        Common.ChannelHeader channelHeader = Common.ChannelHeader.parseFrom(header.getChannelHeader());
+        FabricProposal.ChaincodeHeaderExtension headerExtension = FabricProposal.ChaincodeHeaderExtension.parseFrom(channelHeader.getExtension());
+        FabricProposal.ChaincodeProposalPayload proposalPayload = FabricProposal.ChaincodeProposalPayload.parseFrom(proposal.getPayload());
+        Chaincode.ChaincodeInvocationSpec invocationSpec = Chaincode.ChaincodeInvocationSpec.parseFrom(proposalPayload.getInput());
+
+        Chaincode.ChaincodeID chaincodeId = headerExtension.getChaincodeId();
+        List<ByteString> args = invocationSpec.getChaincodeSpec().getInput().getArgsList();
+        // installing and listing channels name no channel
+        SimulatedLedger ledger = ledgers.get(channelHeader.getChannelId());
+        Simulation simulation = new Simulation(chaincodeId.getName());
+        switch (chaincodeId.getName()) {
+            case LSCC:
+                simulateLifecycle(ledger, args, simulation);
+                break;
+            case CSCC:
+                simulateConfiguration(args, simulation);
+                break;
+            case QSCC:
+                simulateLedgerQuery(args, simulation);
+                break;
+            default:
+                if (ledger == null) {
+                    simulation.failure("Unknown channel " + channelHeader.getChannelId());
+                } else if (ThreadLocalRandom.current().nextDouble() < settings.getEndorsementFailureRate()) {
+                    simulation.failure("Simulated endorsement failure");
+                } else {
+                    simulateKeyValue(ledger, args, simulation);
+                }
+        }
+
+        return sign(signedProposal, chaincodeId, simulation);
+    }
+
+    private void simulateKeyValue(SimulatedLedger ledger, List<ByteString> args, Simulation simulation) {
+        if (args.size() == 5 && GET_RANGE.equals(args.get(0).toStringUtf8())) {
+            simulateRange(ledger, args, simulation);
+            return;
+        }
+        if (args.size() < 2) {
+            simulation.success(ByteString.EMPTY);
+            return;
+        }
+
+        String key = args.get(1).toStringUtf8();
+        SimulatedLedger.VersionedValue current = simulation.read(ledger, key);
+        if (args.size() > 2) {
+            simulation.write(key, args.get(2));
+            simulation.success(args.get(2));
+        } else {
+            simulation.success(current == null ? ByteString.EMPTY : current.getValue());
+        }
+    }
+
+    private void simulateRange(SimulatedLedger ledger, List<ByteString> args, Simulation simulation) {
+        String bookmark = args.get(4).toStringUtf8();
+        String startKey = bookmark.isEmpty() ? args.get(1).toStringUtf8() : bookmark;
+        int pageSize;
+        try {
+            pageSize = Integer.parseInt(args.get(3).toStringUtf8());
+        } catch (NumberFormatException e) {
+            simulation.failure("Invalid page size " + args.get(3).toStringUtf8());
+            return;
+        }
+
+        // one more key than the page holds tells where the next page starts
+        Map<String, SimulatedLedger.VersionedValue> range = ledger.getStateByRange(simulation.namespace, startKey, args.get(2).toStringUtf8(), pageSize + 1);
+        ByteString.Output out = ByteString.newOutput();
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+            String nextKey = "";
+            int count = 0;
+            for (Map.Entry<String, SimulatedLedger.VersionedValue> entry : range.entrySet()) {
+                if (count++ == pageSize) {
+                    nextKey = entry.getKey();
+                    break;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("key", entry.getKey());
+                generator.writeStringField("value", entry.getValue().getValue().toStringUtf8());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeStringField("bookmark", nextKey);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            simulation.failure(e.getMessage());
+            return;
+        }
+
+        simulation.success(out.toByteString());
+    }
+
+    private void simulateLifecycle(SimulatedLedger ledger, List<ByteString> args, Simulation simulation) throws InvalidProtocolBufferException {
+        String function = args.get(0).toStringUtf8();
+        switch (function) {
+            case "install": {
+                Query.ChaincodeInfo info = toChaincodeInfo(Chaincode.ChaincodeDeploymentSpec.parseFrom(args.get(1)));
+                installed.put(info.getName() + ":" + info.getVersion(), info);
+                simulation.success(ByteString.EMPTY);
+                break;
+            }
+            case "deploy":
+            case "upgrade": {
+                Query.ChaincodeInfo info = toChaincodeInfo(Chaincode.ChaincodeDeploymentSpec.parseFrom(args.get(2)));
+                simulation.write(info.getName(), info.toByteString());
+                simulation.success(ByteString.EMPTY);
+                break;
+            }
+            case "getchaincodes": {
+                if (ledger == null) {
+                    simulation.failure("No channel to list chaincodes of");
+                    break;
+                }
+                Query.ChaincodeQueryResponse.Builder response = Query.ChaincodeQueryResponse.newBuilder();
+                for (ByteString value : ledger.getStateByNamespace(LSCC)) {
+                    response.addChaincodes(Query.ChaincodeInfo.parseFrom(value));
+                }
+                simulation.success(response.build().toByteString());
+                break;
+            }
+            case "getinstalledchaincodes":
+                simulation.success(Query.ChaincodeQueryResponse.newBuilder()
+                        .addAllChaincodes(installed.values())
+                        .build()
+                        .toByteString());
+                break;
+            default:
+                simulation.failure("Unsupported lifecycle function " + function);
+        }
+    }
+
+    private void simulateConfiguration(List<ByteString> args, Simulation simulation) {
+        String function = args.get(0).toStringUtf8();
+        switch (function) {
+            case "GetChannels": {
+                Query.ChannelQueryResponse.Builder response = Query.ChannelQueryResponse.newBuilder();
+                for (String channelName : ledgers.keySet()) {
+                    response.addChannels(Query.ChannelInfo.newBuilder().setChannelId(channelName));
+                }
+                simulation.success(response.build().toByteString());
+                break;
+            }
+            case "JoinChain":
+                simulation.success(ByteString.EMPTY);
+                break;
+            case "GetConfigBlock": {
+                SimulatedLedger ledger = ledgers.get(args.get(1).toStringUtf8());
+                if (ledger == null) {
+                    simulation.failure("Unknown channel " + args.get(1).toStringUtf8());
+                } else {
+                    simulation.success(ledger.getBlock(0).toByteString());
+                }
+                break;
+            }
+            default:
+                simulation.failure("Unsupported configuration function " + function);
+        }
+    }
+
+    private void simulateLedgerQuery(List<ByteString> args, Simulation simulation) {
+        String function = args.get(0).toStringUtf8();
+        SimulatedLedger ledger = args.size() > 1 ? ledgers.get(args.get(1).toStringUtf8()) : null;
+        if (ledger == null) {
+            simulation.failure("Unknown channel in ledger query " + function);
+            return;
+        }
+        switch (function) {
+            case "GetChainInfo": {
+                long height = ledger.getHeight();
+                Common.BlockHeader last = ledger.getBlock(height - 1).getHeader();
+                simulation.success(Ledger.BlockchainInfo.newBuilder()
+                        .setHeight(height)
+                        .setCurrentBlockHash(last.getDataHash())
+                        .setPreviousBlockHash(last.getPreviousHash())
+                        .build()
+                        .toByteString());
+                break;
+            }
+            case "GetBlockByNumber": {
+                Common.Block block = ledger.getBlock(Long.parseUnsignedLong(args.get(2).toStringUtf8()));
+                if (block == null) {
+                    simulation.failure("Block not found");
+                } else {
+                    simulation.success(block.toByteString());
+                }
+                break;
+            }
+            default:
+                simulation.failure("Unsupported ledger query function " + function);
+        }
+    }
+
+    private FabricProposalResponse.ProposalResponse sign(FabricProposal.SignedProposal signedProposal,
+                                                         Chaincode.ChaincodeID chaincodeId,
+                                                         Simulation simulation) {
+        FabricProposalResponse.Response response = simulation.response.build();
+        FabricProposal.ChaincodeAction action = FabricProposal.ChaincodeAction.newBuilder()
+                .setResults(simulation.results())
+                .setResponse(response)
+                .setChaincodeId(chaincodeId)
+                .build();
+        ByteString payload = FabricProposalResponse.ProposalResponsePayload.newBuilder()
+                .setProposalHash(sha256(signedProposal.getProposalBytes()))
+                .setExtension(action.toByteString())
+                .build()
+                .toByteString();
+        ByteString endorser = msp.getPeerIdentity();
+
+        long now = System.currentTimeMillis();
+        return FabricProposalResponse.ProposalResponse.newBuilder()
+                .setVersion(1)
+                .setTimestamp(Timestamp.newBuilder().setSeconds(now / 1000).setNanos((int) (now % 1000) * 1000000))
+                .setResponse(response)
+                .setPayload(payload)
+                .setEndorsement(FabricProposalResponse.Endorsement.newBuilder()
+                        .setEndorser(endorser)
+                        .setSignature(msp.sign(payload.concat(endorser))))
+                .build();
+    }
+
+    private static Query.ChaincodeInfo toChaincodeInfo(Chaincode.ChaincodeDeploymentSpec deploymentSpec) {
+        Chaincode.ChaincodeID chaincodeId = deploymentSpec.getChaincodeSpec().getChaincodeId();
+
+        return Query.ChaincodeInfo.newBuilder()
+                .setName(chaincodeId.getName())
+                .setVersion(chaincodeId.getVersion())
+                .setPath(chaincodeId.getPath())
+                .build();
+    }
+
+    private static ByteString sha256(ByteString bytes) {
+        try {
+            return ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read-write set and response collected while simulating one proposal.
+     */
+    private static class Simulation {
+
+        private final String namespace;
+        private final KvRwset.KVRWSet.Builder rwset = KvRwset.KVRWSet.newBuilder();
+        private final FabricProposalResponse.Response.Builder response = FabricProposalResponse.Response.newBuilder();
+
+        Simulation(String namespace) {
+            this.namespace = namespace;
+        }
+
+        SimulatedLedger.VersionedValue read(SimulatedLedger ledger, String key) {
+            SimulatedLedger.VersionedValue current = ledger.getState(namespace, key);
+            KvRwset.KVRead.Builder read = KvRwset.KVRead.newBuilder().setKey(key);
+            if (current != null) {
+                read.setVersion(KvRwset.Version.newBuilder().setBlockNum(current.getBlockNum()).setTxNum(current.getTxNum()));
+            }
+            rwset.addReads(read);
+
+            return current;
+        }
+
+        void write(String key, ByteString value) {
+            rwset.addWrites(KvRwset.KVWrite.newBuilder().setKey(key).setValue(value));
+        }
+
+        void success(ByteString payload) {
+            response.setStatus(200).setPayload(payload);
+        }
+
+        void failure(String message) {
+            response.setStatus(500).setMessage(message);
+        }
+
+        ByteString results() {
+            if (rwset.getReadsCount() == 0 && rwset.getWritesCount() == 0) {
+                return ByteString.EMPTY;
+            }
+
+            return Rwset.TxReadWriteSet.newBuilder()
+                    .setDataModel(Rwset.TxReadWriteSet.DataModel.KV)
+                    .addNsRwset(Rwset.NsReadWriteSet.newBuilder()
+                            .setNamespace(namespace)
+                            .setRwset(rwset.build().toByteString()))
+                    .build()
+                    .toByteString();
+        }
+    }
+}
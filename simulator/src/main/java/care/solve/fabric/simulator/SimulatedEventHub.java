@@ -0,0 +1,83 @@
+package care.solve.fabric.simulator;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.peer.EventsGrpc;
+import org.hyperledger.fabric.protos.peer.PeerEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Event hub service of a simulated peer. A client that registers receives every block committed
+ * afterwards to the ledger of any channel, as from a Fabric 1.0 peer; the SDK keeps those of its
+ * channel.
+ */
+public class SimulatedEventHub extends EventsGrpc.EventsImplBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedEventHub.class);
+
+    private final Collection<SimulatedLedger> ledgers;
+
+    public SimulatedEventHub(Collection<SimulatedLedger> ledgers) {
+        this.ledgers = ledgers;
+    }
+
+    @Override
+    public StreamObserver<PeerEvents.SignedEvent> chat(StreamObserver<PeerEvents.Event> responseObserver) {
+        return new StreamObserver<PeerEvents.SignedEvent>() {
+
+            private Consumer<Common.Block> listener;
+
+            @Override
+            public void onNext(PeerEvents.SignedEvent signedEvent) {
+                PeerEvents.Event event;
+                try {
+                    event = PeerEvents.Event.parseFrom(signedEvent.getEventBytes());
+                } catch (InvalidProtocolBufferException e) {
+                    responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                    return;
+                }
+
+                if (event.getEventCase() == PeerEvents.Event.EventCase.REGISTER && listener == null) {
+                    listener = block -> send(PeerEvents.Event.newBuilder().setBlock(block).build());
+                    send(PeerEvents.Event.newBuilder().setRegister(event.getRegister()).build());
+                    ledgers.forEach(ledger -> ledger.addBlockListener(listener));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.debug("Event stream failed", t);
+                unregister();
+            }
+
+            @Override
+            public void onCompleted() {
+                unregister();
+                responseObserver.onCompleted();
+            }
+
+            private void send(PeerEvents.Event event) {
+                synchronized (responseObserver) {
+                    try {
+                        responseObserver.onNext(event);
+                    } catch (RuntimeException e) {
+                        logger.debug("Cannot send event, dropping subscriber", e);
+                        unregister();
+                    }
+                }
+            }
+
+            private void unregister() {
+                if (listener != null) {
+                    ledgers.forEach(ledger -> ledger.removeBlockListener(listener));
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,299 @@
+package care.solve.fabric.simulator;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.Data;
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.common.Configtx;
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.protos.msp.MspConfig;
+import org.hyperledger.fabric.protos.peer.FabricProposal;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Blocks and world state of one simulated channel, shared by all simulated peers and the orderer.
+ *
+ * Block 0 is a configuration block carrying the root certificates of the simulated MSPs. Committed
+ * transactions whose reads are still current apply the key writes of their read-write sets, the
+ * others are marked {@code MVCC_READ_CONFLICT}; every block is then handed to the
+ * registered block listeners, which is how the event hubs see it.
+ */
+public class SimulatedLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedLedger.class);
+
+    private final String channelName;
+    private final List<Common.Block> blocks = new ArrayList<>();
+    private final ConcurrentNavigableMap<String, VersionedValue> state = new ConcurrentSkipListMap<>();
+    private final List<Consumer<Common.Block>> blockListeners = new CopyOnWriteArrayList<>();
+
+    public SimulatedLedger(String channelName, Collection<SimulatedMsp> msps) {
+        this.channelName = channelName;
+
+        Common.Envelope configEnvelope = Common.Envelope.newBuilder()
+                .setPayload(Common.Payload.newBuilder()
+                        .setHeader(Common.Header.newBuilder()
+                                .setChannelHeader(Common.ChannelHeader.newBuilder()
+                                        .setType(Common.HeaderType.CONFIG_VALUE)
+                                        .setChannelId(channelName)
+                                        .build()
+                                        .toByteString()))
+                        .setData(Configtx.ConfigEnvelope.newBuilder()
+                                .setConfig(Configtx.Config.newBuilder()
+                                        .setSequence(1)
+                                        .setChannelGroup(Configtx.ConfigGroup.newBuilder()
+                                                .putGroups("Application", applicationGroup(msps))))
+                                .build()
+                                .toByteString())
+                        .build()
+                        .toByteString())
+                .build();
+        blocks.add(buildBlock(0, ByteString.EMPTY, Collections.singletonList(configEnvelope), new byte[]{0}));
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public synchronized long getHeight() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the block, or {@code null} when the ledger is not that high yet
+     */
+    public synchronized Common.Block getBlock(long number) {
+        return number < blocks.size() ? blocks.get((int) number) : null;
+    }
+
+    public VersionedValue getState(String namespace, String key) {
+        return state.get(stateKey(namespace, key));
+    }
+
+    /**
+     * Sets a value outside of any block, e.g. to seed chaincode definitions before clients connect.
+     */
+    public void putState(String namespace, String key, ByteString value) {
+        state.put(stateKey(namespace, key), new VersionedValue(value, 0, 0));
+    }
+
+    /**
+     * Up to {@code limit} keys of the namespace from {@code startKey} included to {@code endKey}
+     * excluded, in key order; an empty end key means the end of the namespace.
+     */
+    public Map<String, VersionedValue> getStateByRange(String namespace, String startKey, String endKey, int limit) {
+        String prefix = namespace + "/";
+        String to = endKey.isEmpty() ? namespace + (char) ('/' + 1) : stateKey(namespace, endKey);
+        Map<String, VersionedValue> range = new LinkedHashMap<>();
+        for (Map.Entry<String, VersionedValue> entry : state.subMap(stateKey(namespace, startKey), to).entrySet()) {
+            if (range.size() == limit) {
+                break;
+            }
+            range.put(entry.getKey().substring(prefix.length()), entry.getValue());
+        }
+
+        return range;
+    }
+
+    public List<ByteString> getStateByNamespace(String namespace) {
+        String prefix = namespace + "/";
+
+        return state.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .map(entry -> entry.getValue().getValue())
+                .collect(Collectors.toList());
+    }
+
+    public void addBlockListener(Consumer<Common.Block> listener) {
+        blockListeners.add(listener);
+    }
+
+    public void removeBlockListener(Consumer<Common.Block> listener) {
+        blockListeners.remove(listener);
+    }
+
+    /**
+     * Appends a block with the given envelopes, applies the writes of its valid endorser
+     * transactions and notifies the block listeners.
+     */
+    public void commit(List<Common.Envelope> envelopes) {
+        Common.Block block;
+        synchronized (this) {
+            long number = blocks.size();
+            byte[] validationCodes = new byte[envelopes.size()];
+            for (int txNum = 0; txNum < envelopes.size(); txNum++) {
+                validationCodes[txNum] = (byte) apply(envelopes.get(txNum), number, txNum).getNumber();
+            }
+
+            block = buildBlock(number, headerHash(blocks.get(blocks.size() - 1).getHeader()), envelopes, validationCodes);
+            blocks.add(block);
+        }
+
+        for (Consumer<Common.Block> listener : blockListeners) {
+            try {
+                listener.accept(block);
+            } catch (RuntimeException e) {
+                logger.warn("Block listener failed on block {}", block.getHeader().getNumber(), e);
+            }
+        }
+    }
+
+    private FabricTransaction.TxValidationCode apply(Common.Envelope envelope, long blockNum, int txNum) {
+        try {
+            Common.Payload payload = Common.Payload.parseFrom(envelope.getPayload());
+            Common.ChannelHeader channelHeader = Common.ChannelHeader.parseFrom(payload.getHeader().getChannelHeader());
+            if (channelHeader.getType() != Common.HeaderType.ENDORSER_TRANSACTION_VALUE) {
+                return FabricTransaction.TxValidationCode.VALID;
+            }
+
+            List<Rwset.NsReadWriteSet> readWriteSets = readWriteSets(payload);
+            for (Rwset.NsReadWriteSet nsRwset : readWriteSets) {
+                if (!readsCurrent(nsRwset.getNamespace(), KvRwset.KVRWSet.parseFrom(nsRwset.getRwset()))) {
+                    return FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT;
+                }
+            }
+
+            for (Rwset.NsReadWriteSet nsRwset : readWriteSets) {
+                KvRwset.KVRWSet kvRwset = KvRwset.KVRWSet.parseFrom(nsRwset.getRwset());
+                for (KvRwset.KVWrite write : kvRwset.getWritesList()) {
+                    String stateKey = stateKey(nsRwset.getNamespace(), write.getKey());
+                    if (write.getIsDelete()) {
+                        state.remove(stateKey);
+                    } else {
+                        state.put(stateKey, new VersionedValue(write.getValue(), blockNum, txNum));
+                    }
+                }
+            }
+
+            return FabricTransaction.TxValidationCode.VALID;
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn("Cannot parse transaction {} of block {}", txNum, blockNum, e);
+            return FabricTransaction.TxValidationCode.BAD_PAYLOAD;
+        }
+    }
+
+    /**
+     * The peer's MVCC check: every key read during endorsement must still be at the version read,
+     * which also invalidates the later of two transactions in one block touching the same key.
+     */
+    private boolean readsCurrent(String namespace, KvRwset.KVRWSet kvRwset) {
+        for (KvRwset.KVRead read : kvRwset.getReadsList()) {
+            VersionedValue current = state.get(stateKey(namespace, read.getKey()));
+            if (!read.hasVersion()) {
+                if (current != null) {
+                    return false;
+                }
+            } else if (current == null
+                    || current.getBlockNum() != read.getVersion().getBlockNum()
+                    || current.getTxNum() != read.getVersion().getTxNum()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static List<Rwset.NsReadWriteSet> readWriteSets(Common.Payload payload) throws InvalidProtocolBufferException {
+        List<Rwset.NsReadWriteSet> readWriteSets = new ArrayList<>();
+        FabricTransaction.Transaction transaction = FabricTransaction.Transaction.parseFrom(payload.getData());
+        for (FabricTransaction.TransactionAction action : transaction.getActionsList()) {
+            FabricTransaction.ChaincodeActionPayload actionPayload = FabricTransaction.ChaincodeActionPayload.parseFrom(action.getPayload());
+            FabricProposalResponse.ProposalResponsePayload responsePayload = FabricProposalResponse.ProposalResponsePayload
+                    .parseFrom(actionPayload.getAction().getProposalResponsePayload());
+            FabricProposal.ChaincodeAction chaincodeAction = FabricProposal.ChaincodeAction.parseFrom(responsePayload.getExtension());
+            readWriteSets.addAll(Rwset.TxReadWriteSet.parseFrom(chaincodeAction.getResults()).getNsRwsetList());
+        }
+
+        return readWriteSets;
+    }
+
+    private Common.Block buildBlock(long number, ByteString previousHash, List<Common.Envelope> envelopes, byte[] validationCodes) {
+        Common.BlockData.Builder data = Common.BlockData.newBuilder();
+        envelopes.forEach(envelope -> data.addData(envelope.toByteString()));
+
+        ByteString lastConfig = Common.Metadata.newBuilder()
+                .setValue(Common.LastConfig.newBuilder().setIndex(0).build().toByteString())
+                .build()
+                .toByteString();
+
+        return Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder()
+                        .setNumber(number)
+                        .setPreviousHash(previousHash)
+                        .setDataHash(sha256(data.getDataList())))
+                .setData(data)
+                .setMetadata(Common.BlockMetadata.newBuilder()
+                        .addMetadata(Common.Metadata.getDefaultInstance().toByteString())
+                        .addMetadata(lastConfig)
+                        .addMetadata(ByteString.copyFrom(validationCodes))
+                        .addMetadata(ByteString.EMPTY))
+                .build();
+    }
+
+    private static Configtx.ConfigGroup applicationGroup(Collection<SimulatedMsp> msps) {
+        Configtx.ConfigGroup.Builder application = Configtx.ConfigGroup.newBuilder();
+        for (SimulatedMsp msp : msps) {
+            MspConfig.FabricMSPConfig fabricMspConfig = MspConfig.FabricMSPConfig.newBuilder()
+                    .setName(msp.getMspId())
+                    .addRootCerts(ByteString.copyFromUtf8(msp.getRootCertificate()))
+                    .build();
+            MspConfig.MSPConfig mspConfig = MspConfig.MSPConfig.newBuilder()
+                    .setConfig(fabricMspConfig.toByteString())
+                    .build();
+
+            application.putGroups(msp.getMspId(), Configtx.ConfigGroup.newBuilder()
+                    .putValues("MSP", Configtx.ConfigValue.newBuilder().setValue(mspConfig.toByteString()).build())
+                    .build());
+        }
+
+        return application.build();
+    }
+
+    private static ByteString headerHash(Common.BlockHeader header) {
+        // Fabric hashes the ASN.1 encoding of the header; chaining on the protobuf bytes is enough here
+        return sha256(Collections.singletonList(header.toByteString()));
+    }
+
+    private static ByteString sha256(List<ByteString> chunks) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            chunks.forEach(chunk -> digest.update(chunk.asReadOnlyByteBuffer()));
+
+            return ByteString.copyFrom(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String stateKey(String namespace, String key) {
+        return namespace + "/" + key;
+    }
+
+    /**
+     * Value of a key together with the block and transaction that wrote it.
+     */
+    @Data
+    public static class VersionedValue {
+        private final ByteString value;
+        private final long blockNum;
+        private final long txNum;
+    }
+}
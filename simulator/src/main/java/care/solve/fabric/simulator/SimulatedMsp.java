@@ -0,0 +1,151 @@
+package care.solve.fabric.simulator;
+
+import com.google.protobuf.ByteString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.hyperledger.fabric.protos.msp.Identities;
+import org.hyperledger.fabric.sdk.Enrollment;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Root CA and peer signing identity of a simulated organization. The root certificate is published
+ * in the channel configuration, so endorsements signed by the peer identity verify in the SDK.
+ */
+public class SimulatedMsp {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final long VALIDITY_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+    private final String mspId;
+    private final KeyPair caKeyPair;
+    private final X500Name caName;
+    private final String rootCertificate;
+    private final AtomicLong serial = new AtomicLong(1);
+
+    private final Enrollment peerEnrollment;
+    private final ByteString peerIdentity;
+
+    public SimulatedMsp(String mspId) {
+        this.mspId = mspId;
+        this.caName = new X500Name("CN=ca." + mspId);
+        this.caKeyPair = generateKeyPair();
+        this.rootCertificate = issue(caName, caKeyPair.getPublic(), true);
+
+        this.peerEnrollment = enroll("peer");
+        this.peerIdentity = Identities.SerializedIdentity.newBuilder()
+                .setMspid(mspId)
+                .setIdBytes(ByteString.copyFromUtf8(peerEnrollment.getCert()))
+                .build()
+                .toByteString();
+    }
+
+    public String getMspId() {
+        return mspId;
+    }
+
+    public String getRootCertificate() {
+        return rootCertificate;
+    }
+
+    /**
+     * Issues a new key pair and certificate signed by the organization root.
+     */
+    public Enrollment enroll(String name) {
+        KeyPair keyPair = generateKeyPair();
+        String cert = issue(new X500Name("CN=" + name), keyPair.getPublic(), false);
+
+        return new SimulatedEnrollment(keyPair.getPrivate(), cert);
+    }
+
+    ByteString getPeerIdentity() {
+        return peerIdentity;
+    }
+
+    ByteString sign(ByteString data) {
+        try {
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(peerEnrollment.getKey());
+            signature.update(data.toByteArray());
+
+            return ByteString.copyFrom(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    String issue(X500Name subject, PublicKey publicKey, boolean ca) {
+        try {
+            long now = System.currentTimeMillis();
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                    caName,
+                    BigInteger.valueOf(serial.getAndIncrement()),
+                    new Date(now - TimeUnit.HOURS.toMillis(1)),
+                    new Date(now + VALIDITY_MILLIS),
+                    subject,
+                    publicKey);
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+
+            StringWriter pem = new StringWriter();
+            try (JcaPEMWriter writer = new JcaPEMWriter(pem)) {
+                writer.writeObject(new JcaX509CertificateConverter().getCertificate(
+                        builder.build(new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(caKeyPair.getPrivate()))));
+            }
+
+            return pem.toString();
+        } catch (GeneralSecurityException | OperatorCreationException | IOException e) {
+            throw new RuntimeException(String.format("Cannot issue certificate for %s in %s", subject, mspId), e);
+        }
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class SimulatedEnrollment implements Enrollment {
+
+        private final PrivateKey key;
+        private final String cert;
+
+        SimulatedEnrollment(PrivateKey key, String cert) {
+            this.key = key;
+            this.cert = cert;
+        }
+
+        @Override
+        public PrivateKey getKey() {
+            return key;
+        }
+
+        @Override
+        public String getCert() {
+            return cert;
+        }
+    }
+}
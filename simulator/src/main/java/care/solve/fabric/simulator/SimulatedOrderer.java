@@ -0,0 +1,126 @@
+package care.solve.fabric.simulator;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.hyperledger.fabric.protos.common.Common;
+import org.hyperledger.fabric.protos.orderer.Ab;
+import org.hyperledger.fabric.protos.orderer.AtomicBroadcastGrpc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Broadcast and deliver services of a simulated orderer. Every broadcast envelope is acknowledged
+ * at once and handed to the {@link BlockCutter} of its channel, which commits it with the next
+ * block.
+ */
+public class SimulatedOrderer extends AtomicBroadcastGrpc.AtomicBroadcastImplBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedOrderer.class);
+
+    private final Map<String, SimulatedLedger> ledgers;
+    private final Map<String, BlockCutter> blockCutters;
+
+    SimulatedOrderer(Map<String, SimulatedLedger> ledgers, Map<String, BlockCutter> blockCutters) {
+        this.ledgers = ledgers;
+        this.blockCutters = blockCutters;
+    }
+
+    @Override
+    public StreamObserver<Common.Envelope> broadcast(StreamObserver<Ab.BroadcastResponse> responseObserver) {
+        return new StreamObserver<Common.Envelope>() {
+            @Override
+            public void onNext(Common.Envelope envelope) {
+                BlockCutter blockCutter;
+                try {
+                    blockCutter = blockCutters.get(channelId(envelope));
+                } catch (InvalidProtocolBufferException e) {
+                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.BAD_REQUEST).build());
+                    return;
+                }
+                if (blockCutter == null) {
+                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.NOT_FOUND).build());
+                    return;
+                }
+
+                blockCutter.order(envelope);
+                responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.SUCCESS).build());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.debug("Broadcast stream failed", t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public StreamObserver<Common.Envelope> deliver(StreamObserver<Ab.DeliverResponse> responseObserver) {
+        return new StreamObserver<Common.Envelope>() {
+            @Override
+            public void onNext(Common.Envelope envelope) {
+                try {
+                    Ab.SeekInfo seekInfo = Ab.SeekInfo.parseFrom(Common.Payload.parseFrom(envelope.getPayload()).getData());
+                    SimulatedLedger ledger = ledgers.get(channelId(envelope));
+                    if (ledger == null) {
+                        responseObserver.onNext(status(Common.Status.NOT_FOUND));
+                        return;
+                    }
+                    long height = ledger.getHeight();
+                    long start = position(seekInfo.getStart(), height);
+                    long stop = position(seekInfo.getStop(), height);
+                    if (start > stop || stop >= height) {
+                        // the SDK retries on NOT_FOUND instead of blocking the stream until the block is cut
+                        responseObserver.onNext(status(Common.Status.NOT_FOUND));
+                        return;
+                    }
+
+                    for (long number = start; number <= stop; number++) {
+                        responseObserver.onNext(Ab.DeliverResponse.newBuilder().setBlock(ledger.getBlock(number)).build());
+                    }
+                    responseObserver.onNext(status(Common.Status.SUCCESS));
+                } catch (InvalidProtocolBufferException e) {
+                    responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.debug("Deliver stream failed", t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    private static String channelId(Common.Envelope envelope) throws InvalidProtocolBufferException {
+        Common.Header header = Common.Payload.parseFrom(envelope.getPayload()).getHeader();
+
+        return Common.ChannelHeader.parseFrom(header.getChannelHeader()).getChannelId();
+    }
+
+    private static long position(Ab.SeekPosition position, long height) {
+        switch (position.getTypeCase()) {
+            case OLDEST:
+                return 0;
+            case SPECIFIED:
+                return position.getSpecified().getNumber();
+            default:
+                return height - 1;
+        }
+    }
+
+    private static Ab.DeliverResponse status(Common.Status status) {
+        return Ab.DeliverResponse.newBuilder().setStatus(status).build();
+    }
+}
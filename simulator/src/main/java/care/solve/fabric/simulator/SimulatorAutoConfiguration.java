@@ -0,0 +1,55 @@
+package care.solve.fabric.simulator;
+
+import care.solve.fabric.FabricSdkAutoConfiguration;
+import care.solve.fabric.config.HFConfig;
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.config.UserConfig;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ObjectUtils;
+
+import java.io.IOException;
+
+/**
+ * Runs a {@link FabricSimulator} on the configured peer, orderer and CA URLs when this module is
+ * on the classpath and {@code fabric.simulator.enabled} is set. {@link HFConfig} and
+ * {@link UserConfig} connect to the network while they are created, so they are made to depend
+ * on the simulator.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "fabric.simulator", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties({HFProperties.class, SimulatorProperties.class})
+@AutoConfigureBefore(FabricSdkAutoConfiguration.class)
+public class SimulatorAutoConfiguration {
+
+    private static final String SIMULATOR_BEAN = "fabricSimulator";
+
+    @Bean(name = SIMULATOR_BEAN, destroyMethod = "close")
+    public FabricSimulator fabricSimulator(HFProperties hfProperties, SimulatorProperties simulatorProperties) throws IOException {
+        FabricSimulator simulator = new FabricSimulator(hfProperties, simulatorProperties);
+        simulator.start();
+
+        return simulator;
+    }
+
+    @Bean
+    public static BeanFactoryPostProcessor simulatorFirst() {
+        return beanFactory -> {
+            dependOnSimulator(beanFactory, HFConfig.class);
+            dependOnSimulator(beanFactory, UserConfig.class);
+        };
+    }
+
+    private static void dependOnSimulator(ConfigurableListableBeanFactory beanFactory, Class<?> type) {
+        for (String name : beanFactory.getBeanNamesForType(type, true, false)) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            definition.setDependsOn(ObjectUtils.addObjectToArray(definition.getDependsOn(), SIMULATOR_BEAN));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package care.solve.fabric.simulator;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Behaviour of the {@link FabricSimulator}: endorsement latency and failures, block cutting like
+ * the solo orderer, TLS, and the chaincode to deploy up front.
+ */
+@ConfigurationProperties(prefix = "fabric.simulator")
+@Data
+public class SimulatorProperties {
+    private boolean enabled = false;
+    private long endorsementLatencyMillis = 0;
+    private long endorsementJitterMillis = 0;
+    private double endorsementFailureRate = 0;
+    private int batchSize = 10;
+    private long batchTimeoutMillis = 100;
+    private String tlsCertFile;
+    private String tlsKeyFile;
+    private String chaincodeName;
+    private String chaincodeVersion = "1.0";
+    private String chaincodePath;
+}
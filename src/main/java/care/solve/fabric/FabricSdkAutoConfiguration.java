@@ -8,33 +8,113 @@ import care.solve.fabric.config.UserConfig;
 import care.solve.fabric.controller.ChaincodeController;
 import care.solve.fabric.entity.SampleStore;
 import care.solve.fabric.entity.SampleUser;
+import care.solve.fabric.service.AdmissionController;
+import care.solve.fabric.service.BlockConsumer;
+import care.solve.fabric.service.BlockReplayer;
+import care.solve.fabric.service.CallerIdentityResolver;
 import care.solve.fabric.service.ChaincodeService;
+import care.solve.fabric.service.ChannelRegistry;
 import care.solve.fabric.service.ChannelService;
+import care.solve.fabric.service.CircuitBreakers;
+import care.solve.fabric.service.EndorserSelector;
+import care.solve.fabric.service.FabricExecutors;
 import care.solve.fabric.service.HFClientFactory;
+import care.solve.fabric.service.InvokeRetrier;
+import care.solve.fabric.service.KeyAffinityScheduler;
+import care.solve.fabric.service.OrdererPool;
+import care.solve.fabric.service.PeerLatencyTracker;
+import care.solve.fabric.service.QueryResultCache;
+import care.solve.fabric.service.QueryRouter;
+import care.solve.fabric.service.ReadModel;
+import care.solve.fabric.service.ShardRouter;
+import care.solve.fabric.service.TransactionMetrics;
 import care.solve.fabric.service.TransactionService;
 import care.solve.fabric.service.TransactionServiceImpl;
 import care.solve.fabric.service.UserService;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.HFClient;
-import org.hyperledger.fabric.sdk.Orderer;
 import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.hyperledger.fabric_ca.sdk.HFCAClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Configuration
 @EnableConfigurationProperties({HFProperties.class, ChaincodeProperties.class})
 @Import(value = {HFConfig.class, StoreConfig.class, UserConfig.class})
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.MetricsDropwizardAutoConfiguration")
 public class FabricSdkAutoConfiguration {
 
     @Bean
-    public ChaincodeService chaincodeService(ChaincodeProperties chaincodeProperties, Channel channel) {
-        return new ChaincodeService(chaincodeProperties, channel);
+    @ConditionalOnMissingBean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean
+    public TransactionMetrics transactionMetrics(MetricRegistry metricRegistry) {
+        return new TransactionMetrics(metricRegistry);
+    }
+
+    @Bean(name = "fabricExecutor")
+    @ConditionalOnMissingBean(name = "fabricExecutor")
+    public ThreadPoolTaskExecutor fabricExecutor(HFProperties hfProperties) {
+        HFProperties.Executor executorConf = hfProperties.getExecutor();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("fabric-tx-");
+        // like the stage pools: the core size is the maximum, as the queue only fills under overload
+        executor.setCorePoolSize(executorConf.getMaxPoolSize());
+        executor.setMaxPoolSize(executorConf.getMaxPoolSize());
+        executor.setKeepAliveSeconds(executorConf.getKeepAliveSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(executorConf.getQueueCapacity());
+
+        return executor;
+    }
+
+    @Bean(name = "fabricScheduler")
+    @ConditionalOnMissingBean(name = "fabricScheduler")
+    public ScheduledExecutorService fabricScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("fabric-scheduler-");
+        threadFactory.setDaemon(true);
+
+        return Executors.newScheduledThreadPool(1, threadFactory);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public FabricExecutors fabricExecutors(HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new FabricExecutors(hfProperties, metricRegistry);
+    }
+
+    @Bean
+    public ChaincodeService chaincodeService(ChaincodeProperties chaincodeProperties,
+                                             Channel channel,
+                                             CircuitBreakers circuitBreakers,
+                                             OrdererPool ordererPool,
+                                             MetricRegistry metricRegistry) throws InvalidArgumentException {
+        ChaincodeService chaincodeService = new ChaincodeService(chaincodeProperties, channel, circuitBreakers, ordererPool, metricRegistry);
+        channel.registerBlockListener(chaincodeService.getChaincodeIdCache());
+
+        return chaincodeService;
     }
 
     @Bean
@@ -43,13 +123,147 @@ public class FabricSdkAutoConfiguration {
     }
 
     @Bean
-    public HFClientFactory hfClientFactory(@Qualifier("sampleUser") User user) {
-        return new HFClientFactory(user);
+    @ConditionalOnMissingBean
+    public CallerIdentityResolver callerIdentityResolver() {
+        return () -> null;
+    }
+
+    @Bean
+    public HFClientFactory hfClientFactory(@Qualifier("sampleUser") User user,
+                                           SampleStore defaultStore,
+                                           CallerIdentityResolver callerIdentityResolver,
+                                           HFProperties hfProperties,
+                                           MetricRegistry metricRegistry) {
+        return new HFClientFactory(user, defaultStore, callerIdentityResolver, hfProperties, metricRegistry);
+    }
+
+    @Bean
+    public PeerLatencyTracker peerLatencyTracker() {
+        return new PeerLatencyTracker();
+    }
+
+    @Bean
+    public CircuitBreakers circuitBreakers(PeerLatencyTracker peerLatencyTracker, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new CircuitBreakers(peerLatencyTracker, hfProperties, metricRegistry);
+    }
+
+    @Bean
+    public EndorserSelector endorserSelector(ChaincodeService chaincodeService, HFProperties hfProperties, PeerLatencyTracker peerLatencyTracker) {
+        return new EndorserSelector(chaincodeService.getChaincodeEndorsementPolicy(), hfProperties, peerLatencyTracker);
+    }
+
+    @Bean
+    public QueryRouter queryRouter(PeerLatencyTracker peerLatencyTracker,
+                                   CircuitBreakers circuitBreakers,
+                                   FabricExecutors fabricExecutors,
+                                   @Qualifier("fabricScheduler") ScheduledExecutorService fabricScheduler,
+                                   HFProperties hfProperties) {
+        return new QueryRouter(peerLatencyTracker, circuitBreakers, fabricExecutors.query(), fabricScheduler, hfProperties);
+    }
+
+    @Bean
+    public OrdererPool ordererPool(CircuitBreakers circuitBreakers, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new OrdererPool(circuitBreakers, hfProperties, metricRegistry);
+    }
+
+    @Bean
+    public QueryResultCache queryResultCache(HFProperties hfProperties, Channel channel, MetricRegistry metricRegistry) throws InvalidArgumentException {
+        QueryResultCache queryResultCache = new QueryResultCache(hfProperties, metricRegistry);
+        if (queryResultCache.isEnabled()) {
+            channel.registerBlockListener(queryResultCache);
+        }
+
+        return queryResultCache;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "fabric.read-model", name = "enabled", havingValue = "true")
+    public ReadModel readModel(ChaincodeService chaincodeService, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new ReadModel(() -> chaincodeService.getLatestChaincodeId().getName(), hfProperties, metricRegistry);
+    }
+
+    /**
+     * Feeds every {@link BlockConsumer} bean, the read model included.
+     */
+    @Bean(initMethod = "start")
+    public BlockReplayer blockReplayer(Channel channel,
+                                       ObjectProvider<List<BlockConsumer>> blockConsumers,
+                                       HFProperties hfProperties,
+                                       @Qualifier("fabricExecutor") Executor fabricExecutor,
+                                       FabricExecutors fabricExecutors,
+                                       @Qualifier("fabricScheduler") ScheduledExecutorService fabricScheduler,
+                                       MetricRegistry metricRegistry) throws InvalidArgumentException {
+        List<BlockConsumer> consumers = blockConsumers.getIfAvailable();
+        BlockReplayer blockReplayer = new BlockReplayer(channel, consumers == null ? Collections.emptyList() : consumers,
+                hfProperties, fabricExecutor, fabricExecutors.query(), fabricScheduler, metricRegistry);
+        if (consumers != null && !consumers.isEmpty()) {
+            channel.registerBlockListener(blockReplayer);
+        }
+
+        return blockReplayer;
+    }
+
+    @Bean
+    public AdmissionController admissionController(HFProperties hfProperties,
+                                                   @Qualifier("fabricScheduler") ScheduledExecutorService fabricScheduler,
+                                                   MetricRegistry metricRegistry) {
+        return new AdmissionController(hfProperties.getChannel().getName(), hfProperties.getAdmission(), fabricScheduler, metricRegistry);
+    }
+
+    @Bean
+    public InvokeRetrier invokeRetrier(HFProperties hfProperties,
+                                       @Qualifier("fabricScheduler") ScheduledExecutorService fabricScheduler,
+                                       TransactionMetrics transactionMetrics) {
+        return new InvokeRetrier(hfProperties, fabricScheduler, transactionMetrics);
+    }
+
+    @Bean
+    public TransactionServiceImpl transactionService(HFClientFactory hfClientFactory,
+                                                     Channel healthChannel,
+                                                     ChaincodeService chaincodeService,
+                                                     @Qualifier("fabricExecutor") Executor fabricExecutor,
+                                                     FabricExecutors fabricExecutors,
+                                                     HFProperties hfProperties,
+                                                     EndorserSelector endorserSelector,
+                                                     CircuitBreakers circuitBreakers,
+                                                     QueryRouter queryRouter,
+                                                     OrdererPool ordererPool,
+                                                     QueryResultCache queryResultCache,
+                                                     TransactionMetrics transactionMetrics,
+                                                     AdmissionController admissionController,
+                                                     InvokeRetrier invokeRetrier) {
+        return new TransactionServiceImpl(hfClientFactory, healthChannel, chaincodeService, fabricExecutor, fabricExecutors,
+                hfProperties, endorserSelector, circuitBreakers, queryRouter, ordererPool, queryResultCache, transactionMetrics, admissionController, invokeRetrier);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ChannelRegistry channelRegistry(HFProperties hfProperties,
+                                           TransactionService transactionService,
+                                           ChannelService channelService,
+                                           @Qualifier("peerAdminHFClient") HFClient peerAdminClient,
+                                           @Qualifier("peerAdminUser") User peerAdminUser,
+                                           HFClientFactory hfClientFactory,
+                                           ChaincodeProperties chaincodeProperties,
+                                           PeerLatencyTracker peerLatencyTracker,
+                                           CircuitBreakers circuitBreakers,
+                                           OrdererPool ordererPool,
+                                           @Qualifier("fabricExecutor") Executor fabricExecutor,
+                                           @Qualifier("fabricScheduler") ScheduledExecutorService fabricScheduler,
+                                           MetricRegistry metricRegistry) {
+        return new ChannelRegistry(hfProperties, transactionService, channelService, peerAdminClient, peerAdminUser, hfClientFactory,
+                chaincodeProperties, peerLatencyTracker, circuitBreakers, ordererPool, fabricExecutor, fabricScheduler, metricRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "fabric.sharding", name = "enabled", havingValue = "true")
+    public ShardRouter shardRouter(ChannelRegistry channelRegistry, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new ShardRouter(channelRegistry, hfProperties, metricRegistry);
     }
 
     @Bean
-    public TransactionService transactionService(HFClientFactory hfClientFactory, Channel healthChannel, ChaincodeService chaincodeService) {
-        return new TransactionServiceImpl(hfClientFactory, healthChannel, chaincodeService);
+    @ConditionalOnProperty(prefix = "fabric.key-affinity", name = "enabled", havingValue = "true")
+    public KeyAffinityScheduler keyAffinityScheduler(TransactionServiceImpl transactionService, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        return new KeyAffinityScheduler(transactionService, hfProperties, metricRegistry);
     }
 
     @Bean
@@ -62,9 +276,8 @@ public class FabricSdkAutoConfiguration {
     public ChaincodeController chaincodeController(ChaincodeService chaincodeService,
                                                    UserService userService,
                                                    @Qualifier("peerAdminHFClient") HFClient peerAdminClient,
-                                                   Channel healthChannel,
-                                                   Orderer orderer) {
+                                                   Channel healthChannel) {
         ObjectMapper mapper = new ObjectMapper();
-        return new ChaincodeController(chaincodeService, userService, peerAdminClient, healthChannel, orderer, mapper);
+        return new ChaincodeController(chaincodeService, userService, peerAdminClient, healthChannel, mapper);
     }
 }
@@ -0,0 +1,14 @@
+package care.solve.fabric.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * CBOR codec; needs the optional {@code jackson-dataformat-cbor} on the classpath.
+ */
+public class CborCodec<T> extends JsonCodec<T> {
+
+    public CborCodec(Class<T> type) {
+        super(new ObjectMapper(new CBORFactory()), type);
+    }
+}
@@ -0,0 +1,28 @@
+package care.solve.fabric.codec;
+
+import com.google.protobuf.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns chaincode arguments into bytes and chaincode payloads back into objects for the typed
+ * {@code TransactionService} calls.
+ */
+public interface Codec<T> {
+
+    void encode(T value, OutputStream out) throws IOException;
+
+    /**
+     * The encoded value in an array of its exact size. By default written to a stream and copied
+     * out of it; codecs that know the size up front override this.
+     */
+    default byte[] encode(T value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(value, out);
+        return out.toByteArray();
+    }
+
+    T decode(ByteString payload) throws IOException;
+}
@@ -0,0 +1,77 @@
+package care.solve.fabric.codec;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding and decoding through a {@link Codec}, plus the codecs for raw and UTF-8 payloads.
+ */
+public final class Codecs {
+
+    private static final Codec<ByteString> BYTES = new Codec<ByteString>() {
+        @Override
+        public void encode(ByteString value, OutputStream out) throws IOException {
+            value.writeTo(out);
+        }
+
+        @Override
+        public byte[] encode(ByteString value) {
+            return value.toByteArray();
+        }
+
+        @Override
+        public ByteString decode(ByteString payload) {
+            return payload;
+        }
+    };
+
+    private static final Codec<String> UTF8 = new Codec<String>() {
+        @Override
+        public void encode(String value, OutputStream out) throws IOException {
+            out.write(encode(value));
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteString payload) {
+            return payload.toStringUtf8();
+        }
+    };
+
+    private Codecs() {
+    }
+
+    /**
+     * Payload as received, without copying.
+     */
+    public static Codec<ByteString> bytes() {
+        return BYTES;
+    }
+
+    public static Codec<String> utf8() {
+        return UTF8;
+    }
+
+    public static <T> byte[] encode(Codec<T> codec, T value) {
+        try {
+            return codec.encode(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static <T> T decode(Codec<T> codec, ByteString payload) {
+        try {
+            return codec.decode(payload);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
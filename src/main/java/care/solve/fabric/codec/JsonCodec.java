@@ -0,0 +1,49 @@
+package care.solve.fabric.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Jackson codec, JSON by default or any binary format given a mapper over another factory,
+ * as {@link CborCodec} does.
+ */
+public class JsonCodec<T> implements Codec<T> {
+
+    private final ObjectMapper objectMapper;
+    private final JavaType type;
+
+    public JsonCodec(Class<T> type) {
+        this(new ObjectMapper(), type);
+    }
+
+    public JsonCodec(ObjectMapper objectMapper, Class<T> type) {
+        this(objectMapper, objectMapper.constructType(type));
+    }
+
+    public JsonCodec(ObjectMapper objectMapper, JavaType type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+    }
+
+    @Override
+    public void encode(T value, OutputStream out) throws IOException {
+        objectMapper.writeValue(out, value);
+    }
+
+    /**
+     * Encoded into the mapper's recycled buffers, then copied out once.
+     */
+    @Override
+    public byte[] encode(T value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public T decode(ByteString payload) throws IOException {
+        return objectMapper.readValue(payload.newInput(), type);
+    }
+}
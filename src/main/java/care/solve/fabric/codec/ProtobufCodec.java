@@ -0,0 +1,38 @@
+package care.solve.fabric.codec;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Protobuf codec for a generated message type, e.g. {@code new ProtobufCodec<>(Patient.parser())}.
+ */
+public class ProtobufCodec<T extends MessageLite> implements Codec<T> {
+
+    private final Parser<T> parser;
+
+    public ProtobufCodec(Parser<T> parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public void encode(T value, OutputStream out) throws IOException {
+        value.writeTo(out);
+    }
+
+    /**
+     * Written straight into an array of the message's serialized size.
+     */
+    @Override
+    public byte[] encode(T value) {
+        return value.toByteArray();
+    }
+
+    @Override
+    public T decode(ByteString payload) throws IOException {
+        return parser.parseFrom(payload);
+    }
+}
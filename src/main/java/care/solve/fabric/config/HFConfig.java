@@ -25,7 +25,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.List;
-import java.util.Properties;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -34,11 +33,13 @@ public class HFConfig {
     private static final Logger logger = LoggerFactory.getLogger(HFConfig.class);
 
     private HFProperties hfProperties;
+    private ChannelService channelService;
     private HFProperties.Organization clinicOrg;
 
     @Autowired
-    public HFConfig(HFProperties hfProperties) {
+    public HFConfig(HFProperties hfProperties, ChannelService channelService) {
         this.hfProperties = hfProperties;
+        this.channelService = channelService;
         clinicOrg = hfProperties.getOrgs().get("clinic");
     }
 
@@ -78,7 +79,7 @@ public class HFConfig {
                         return peerAdminHFClient.newPeer(
                                 peerConf.getName(),
                                 peerConf.getGrpcUrl(),
-                                constructPeerProperties(peerConf.getName(), peerConf.getTlsCertFile())
+                                channelService.constructPeerProperties(peerConf.getName(), peerConf.getTlsCertFile())
                         );
                     } catch (InvalidArgumentException e) {
                         String errMsg = String.format("Error while constructing peer: %s", peerConf);
@@ -88,15 +89,9 @@ public class HFConfig {
                 }).collect(Collectors.toList());
     }
 
-    @Bean(name = "orderer")
-    public Orderer constructOrderer(HFClient peerAdminHFClient) throws InvalidArgumentException, IOException {
-        HFProperties.Orderer orderer = clinicOrg.getOrderers().get(0);
-
-        return peerAdminHFClient.newOrderer(
-                orderer.getName(),
-                orderer.getGrpcUrl(),
-                constructOrdererProperties(orderer.getName(), orderer.getTlsCertFile())
-        );
+    @Bean(name = "orderers")
+    public List<Orderer> constructOrderers(HFClient peerAdminHFClient) throws InvalidArgumentException {
+        return channelService.constructOrderers(peerAdminHFClient);
     }
 
     @Bean(name = "customEventHub")
@@ -106,47 +101,24 @@ public class HFConfig {
         return peerAdminHFClient.newEventHub(
                 peer.getName(),
                 peer.getEventHub().getGrpcUrl(),
-                constructPeerProperties(peer.getName(), peer.getTlsCertFile())
+                channelService.constructPeerProperties(peer.getName(), peer.getTlsCertFile())
         );
     }
 
-    public Properties constructPeerProperties(final String peerName, final String peerTLSCertFile) {
-
-        Properties properties = new Properties();
-        properties.setProperty("pemFile", peerTLSCertFile);
-        properties.setProperty("hostnameOverride", peerName);
-        properties.setProperty("sslProvider", "openSSL");
-        properties.setProperty("negotiationType", "TLS");
-
-        return properties;
-    }
-
-    public Properties constructOrdererProperties(String ordererName, String ordererTlsCertFile) throws IOException {
-        Properties properties = new Properties();
-        properties.setProperty("pemFile", ordererTlsCertFile);
-        properties.setProperty("hostnameOverride", ordererName);
-        properties.setProperty("sslProvider", "openSSL");
-        properties.setProperty("negotiationType", "TLS");
-
-        properties.setProperty("ordererWaitTimeMilliSecs", "90000");
-
-        return properties;
-    }
-
     @Bean(name = "healthChannel")
     public Channel healthChannel(
             ChannelService channelService,
             @Qualifier("peerAdminUser") User peerAdminUser,
             @Qualifier("peerAdminHFClient") HFClient client,
             @Qualifier("clinicPeers") List<Peer> clinicPeers,
-            @Qualifier("orderer") Orderer orderer,
+            @Qualifier("orderers") List<Orderer> orderers,
             @Qualifier("customEventHub") EventHub eventHub) throws InvalidArgumentException, TransactionException, ProposalException, IOException {
 
         Channel channel;
         if (channelService.isChannelExists(hfProperties.getChannel().getName(), clinicPeers.get(0), client)) {
-            channel = channelService.connectToChannel(hfProperties.getChannel().getName(), client, clinicPeers, orderer, eventHub);
+            channel = channelService.connectToChannel(hfProperties.getChannel().getName(), client, clinicPeers, orderers, eventHub);
         } else {
-            channel = channelService.constructChannel(hfProperties.getChannel().getName(), client, peerAdminUser, clinicPeers, orderer, eventHub);
+            channel = channelService.constructChannel(hfProperties.getChannel().getName(), client, peerAdminUser, clinicPeers, orderers, eventHub);
         }
 
         return channel;
@@ -2,9 +2,14 @@ package care.solve.fabric.config;
 
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -59,10 +64,168 @@ public class HFProperties {
     public static class Channel {
         private String name;
         private String genesisBlockFile;
+        // the shared settings when not set
+        private Admission admission;
+        private Pools pools;
+    }
+
+    @Data
+    public static class Executor {
+        // threads are started up to this size before tasks queue, and stop after keepAliveSeconds idle
+        private int maxPoolSize = 64;
+        private int keepAliveSeconds = 60;
+        private int queueCapacity = 10000;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Pool {
+        // threads are started up to this size before tasks queue, and stop after keepAliveSeconds idle
+        private int maxPoolSize;
+        private int keepAliveSeconds = 60;
+        private int queueCapacity = 10000;
+        private boolean virtualThreads = false;
+
+        Pool(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+    }
+
+    @Data
+    public static class Pools {
+        private Pool endorse = new Pool(32);
+        private Pool order = new Pool(16);
+        private Pool commit = new Pool(8);
+        private Pool query = new Pool(32);
+    }
+
+    @Data
+    public static class Batch {
+        private int maxInFlightProposals = 32;
+        private int maxInFlightBroadcasts = 8;
+    }
+
+    @Data
+    public static class Endorsement {
+        public enum Strategy {
+            ALL, ROUND_ROBIN, LEAST_LATENCY
+        }
+
+        private Strategy strategy = Strategy.ROUND_ROBIN;
+        private long proposalWaitTimeMillis = 20000;
+    }
+
+    @Data
+    public static class Ordering {
+        public enum Strategy {
+            ROUND_ROBIN, LEAST_PENDING
+        }
+
+        private Strategy strategy = Strategy.ROUND_ROBIN;
+    }
+
+    @Data
+    public static class Retry {
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 50;
+        private long maxBackoffMillis = 1000;
+        private List<FabricTransaction.TxValidationCode> retryableCodes = new ArrayList<>(Arrays.asList(
+                FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT,
+                FabricTransaction.TxValidationCode.PHANTOM_READ_CONFLICT));
+    }
+
+    @Data
+    public static class KeyAffinity {
+        private boolean enabled = false;
+        private int stripes = 256;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private double minHealthScore = 0.5;
+        private int minimumCalls = 10;
+        private long slowCallMillis = 5000;
+        private long openMillis = 30000;
+        private long probeIntervalMillis = 1000;
+        private int halfOpenProbes = 3;
+    }
+
+    @Data
+    public static class Admission {
+        private boolean enabled = true;
+        private int maxConcurrency = 64;
+        private int maxQueueSize = 1000;
+        private long maxQueueWaitMillis = 5000;
+        private boolean adaptive = false;
+        private int minConcurrency = 4;
+        private double latencyTolerance = 2.0;
+        private double backoffRatio = 0.9;
+    }
+
+    @Data
+    public static class Query {
+        private boolean hedge = true;
+        private long defaultHedgeDelayMillis = 100;
+        private long minHedgeDelayMillis = 5;
+        private int pageSize = 100;
+    }
+
+    @Data
+    public static class ClientCache {
+        private long maximumSize = 1000;
+        private long expireAfterAccessMinutes = 30;
+    }
+
+    @Data
+    public static class QueryCache {
+        private boolean enabled = false;
+        private long maximumSize = 10000;
+        private List<String> functions = new ArrayList<>();
+        private List<String> keyAddressedFunctions = new ArrayList<>();
+        private long maxPeerLagMillis = 1000;
+    }
+
+    @Data
+    public static class ReadModel {
+        private boolean enabled = false;
+        private List<String> chaincodes = new ArrayList<>();
+        private String storeFile;
+        private long maxWaitMillis = 5000;
+    }
+
+    @Data
+    public static class Replay {
+        private int batchSize = 16;
+        private long retryMillis = 5000;
+        private int maxPendingBlocks = 1000;
+    }
+
+    @Data
+    public static class Sharding {
+        private boolean enabled = false;
+        private List<String> channels = new ArrayList<>();
+        private int virtualNodes = 160;
     }
 
     private Map<String, Organization> orgs;
     private Channel channel;
+    private Map<String, Channel> channels = new LinkedHashMap<>();
+    private Executor executor = new Executor();
+    private Batch batch = new Batch();
+    private Endorsement endorsement = new Endorsement();
+    private Ordering ordering = new Ordering();
+    private Admission admission = new Admission();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private Retry retry = new Retry();
+    private Pools pools = new Pools();
+    private KeyAffinity keyAffinity = new KeyAffinity();
+    private Query query = new Query();
+    private ClientCache clientCache = new ClientCache();
+    private QueryCache queryCache = new QueryCache();
+    private ReadModel readModel = new ReadModel();
+    private Replay replay = new Replay();
+    private Sharding sharding = new Sharding();
     private String endorsementPolicy;
 
     private String rootFolder;
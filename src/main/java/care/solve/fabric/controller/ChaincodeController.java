@@ -8,7 +8,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hyperledger.fabric.protos.peer.Query;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.HFClient;
-import org.hyperledger.fabric.sdk.Orderer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.util.CollectionUtils;
@@ -30,7 +29,6 @@ public class ChaincodeController {
     private HFClient peerAdminClient;
     private Channel healthChannel;
     private UserService userService;
-    private Orderer orderer;
     private ObjectMapper mapper;
 
     @Autowired
@@ -38,14 +36,12 @@ public class ChaincodeController {
                                UserService userService,
                                @Qualifier("peerAdminHFClient") HFClient peerAdminClient,
                                Channel healthChannel,
-                               Orderer orderer,
                                ObjectMapper mapper) {
 
         this.chaincodeService = chaincodeService;
         this.userService = userService;
         this.peerAdminClient = peerAdminClient;
         this.healthChannel = healthChannel;
-        this.orderer = orderer;
         this.mapper = mapper;
     }
 
@@ -61,7 +57,7 @@ public class ChaincodeController {
         File tarGzFile = new File("/tmp/" + file.getOriginalFilename());
         file.transferTo(tarGzFile);
         chaincodeService.installChaincode(peerAdminClient, chaincodeMeta, healthChannel.getPeers(), tarGzFile);
-        chaincodeService.instantiateChaincode(peerAdminClient, chaincodeMeta, healthChannel, orderer);
+        chaincodeService.instantiateChaincode(peerAdminClient, chaincodeMeta, healthChannel);
 
     }
 
@@ -77,7 +73,7 @@ public class ChaincodeController {
         File tarGzFile = new File("/tmp/" + file.getOriginalFilename());
         file.transferTo(tarGzFile);
         chaincodeService.installChaincode(peerAdminClient, chaincodeMeta, healthChannel.getPeers(), tarGzFile);
-        chaincodeService.upgradeChaincode(peerAdminClient, chaincodeMeta,  healthChannel, orderer);
+        chaincodeService.upgradeChaincode(peerAdminClient, chaincodeMeta,  healthChannel);
     }
 
     @PostMapping("registerUsers")
@@ -0,0 +1,49 @@
+package care.solve.fabric.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch submission. {@link #items} are in the same order as the submitted requests.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResult {
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        private byte[] payload;
+        private Throwable error;
+        private long latencyMillis;
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Statistics {
+        private int submitted;
+        private int succeeded;
+        private int failed;
+        private long elapsedMillis;
+        private double throughputPerSecond;
+        private long meanLatencyMillis;
+        private long p50LatencyMillis;
+        private long p95LatencyMillis;
+        private long p99LatencyMillis;
+        private long maxLatencyMillis;
+    }
+
+    private List<Item> items;
+    private Statistics statistics;
+
+}
@@ -0,0 +1,15 @@
+package care.solve.fabric.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InvokeRequest {
+
+    private String func;
+    private String[] args;
+
+}
@@ -0,0 +1,23 @@
+package care.solve.fabric.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a paged query: the raw JSON of each item and the bookmark to ask the next page
+ * with, empty on the last page.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class QueryPage {
+    private List<byte[]> items;
+    private String bookmark;
+
+    public boolean isLast() {
+        return bookmark == null || bookmark.isEmpty() || items.isEmpty();
+    }
+}
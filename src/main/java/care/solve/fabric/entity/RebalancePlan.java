@@ -0,0 +1,35 @@
+package care.solve.fabric.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The partition keys that map to another channel once the shards change, out of the
+ * {@link #keyCount} keys checked. Keys absent from {@link #moves} stay where they are.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RebalancePlan {
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Move {
+        private String key;
+        private String fromChannel;
+        private String toChannel;
+    }
+
+    private List<String> currentChannels;
+    private List<String> targetChannels;
+    private int keyCount;
+    private List<Move> moves;
+
+    public double getMovedFraction() {
+        return keyCount == 0 ? 0 : moves.size() / (double) keyCount;
+    }
+}
@@ -0,0 +1,277 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the transactions in flight on one channel. Callers past the limit wait in a bounded
+ * queue for at most {@code max-queue-wait-millis}; when the queue is full or the wait expires they
+ * get an {@link AdmissionRejectedException} instead of adding to the peers' backlog. An
+ * asynchronous caller waits as a future that a released slot completes, so no thread is parked.
+ *
+ * In adaptive mode the limit follows AIMD: it shrinks by {@code backoff-ratio} whenever a
+ * transaction takes longer than {@code latency-tolerance} times the no-load latency of its kind
+ * (the fastest one of the recent window), and grows by one per limit's worth of fast transactions
+ * while at least half of it is in use, between {@code min-concurrency} and {@code max-concurrency}.
+ * Queries and invokes keep separate baselines since an invoke also waits for its block. Only
+ * successful transactions are measured: a failure can end at any point, and a fast one would set
+ * a baseline that every normal transaction then exceeds.
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final int BASELINE_WINDOW = 500;
+
+    public enum Kind {
+        QUERY, INVOKE
+    }
+
+    private final String channelName;
+    private final HFProperties.Admission admissionConf;
+    private final ScheduledExecutorService scheduler;
+    private final Meter rejections;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    // volatile for the gauges, written under the lock
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int queued;
+
+    private final Map<Kind, Baseline> baselines = new EnumMap<>(Kind.class);
+
+    public AdmissionController(String channelName, HFProperties.Admission admissionConf, ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        this.channelName = channelName;
+        this.admissionConf = admissionConf;
+        this.scheduler = scheduler;
+        this.limit = admissionConf.getMaxConcurrency();
+        for (Kind kind : Kind.values()) {
+            baselines.put(kind, new Baseline());
+        }
+
+        String prefix = MetricRegistry.name("fabric.admission", channelName);
+        this.rejections = metricRegistry.meter(MetricRegistry.name(prefix, "rejections"));
+        metricRegistry.register(MetricRegistry.name(prefix, "limit"), (Gauge<Integer>) this::getLimit);
+        metricRegistry.register(MetricRegistry.name(prefix, "inflight"), (Gauge<Integer>) this::getInFlight);
+        metricRegistry.register(MetricRegistry.name(prefix, "queued"), (Gauge<Integer>) this::getQueued);
+    }
+
+    /**
+     * Takes a slot, waiting in the queue if the channel is at its limit. The permit must be
+     * released once the transaction is committed or failed.
+     */
+    public Permit acquire(Kind kind) {
+        CompletableFuture<Permit> permit = acquireAsync(kind);
+        try {
+            return permit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // a slot granted meanwhile is handed back
+            permit.cancel(false);
+            permit.thenAccept(granted -> granted.release(false));
+            throw reject("interrupted in the wait queue");
+        } catch (ExecutionException e) {
+            throw (AdmissionRejectedException) e.getCause();
+        }
+    }
+
+    /**
+     * Same as {@link #acquire(Kind)} without blocking: the future completes once a slot is free,
+     * or fails with an {@link AdmissionRejectedException}. It is completed on the thread that
+     * released the slot, or on the scheduler when the wait expires.
+     */
+    public CompletableFuture<Permit> acquireAsync(Kind kind) {
+        if (!admissionConf.isEnabled()) {
+            return CompletableFuture.completedFuture(new Permit(kind));
+        }
+
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(kind));
+            }
+            if (waiters.size() >= admissionConf.getMaxQueueSize()) {
+                CompletableFuture<Permit> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(reject("wait queue is full"));
+                return rejected;
+            }
+
+            waiter = new Waiter(kind);
+            waiters.add(waiter);
+            queued = waiters.size();
+        } finally {
+            lock.unlock();
+        }
+
+        scheduler.schedule(() -> expire(waiter), admissionConf.getMaxQueueWaitMillis(), TimeUnit.MILLISECONDS);
+        return waiter.permit;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    private void expire(Waiter waiter) {
+        lock.lock();
+        try {
+            if (!waiters.remove(waiter)) {
+                return;
+            }
+            queued = waiters.size();
+        } finally {
+            lock.unlock();
+        }
+
+        waiter.permit.completeExceptionally(reject("timed out in the wait queue"));
+    }
+
+    private void release(Kind kind, long heldNanos, boolean success) {
+        List<Waiter> admitted;
+        lock.lock();
+        try {
+            if (success && admissionConf.isAdaptive()) {
+                adjustLimit(baselines.get(kind).update(heldNanos), heldNanos);
+            }
+            inFlight--;
+            admitted = admitWaiters();
+        } finally {
+            lock.unlock();
+        }
+
+        // completed outside the lock since the waiters' continuations run right here
+        for (Waiter waiter : admitted) {
+            Permit permit = new Permit(waiter.kind);
+            if (!waiter.permit.complete(permit)) {
+                permit.release(false);
+            }
+        }
+    }
+
+    /**
+     * Takes the waiters at the head of the queue that fit under the limit, which a raised limit
+     * may make more than one.
+     */
+    private List<Waiter> admitWaiters() {
+        if (waiters.isEmpty() || inFlight >= (int) limit) {
+            return Collections.emptyList();
+        }
+
+        List<Waiter> admitted = new ArrayList<>();
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            admitted.add(waiters.poll());
+            inFlight++;
+        }
+        queued = waiters.size();
+
+        return admitted;
+    }
+
+    private void adjustLimit(long baselineNanos, long heldNanos) {
+        int previous = (int) limit;
+        if (heldNanos > baselineNanos * admissionConf.getLatencyTolerance()) {
+            limit = Math.max(admissionConf.getMinConcurrency(), limit * admissionConf.getBackoffRatio());
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(admissionConf.getMaxConcurrency(), limit + 1 / limit);
+        }
+        if ((int) limit != previous) {
+            logger.debug("Concurrency limit of channel {} changed from {} to {}", channelName, previous, (int) limit);
+        }
+    }
+
+    private AdmissionRejectedException reject(String reason) {
+        rejections.mark();
+        return new AdmissionRejectedException(String.format("Channel %s is at its limit of %d transactions in flight, %s",
+                channelName, (int) limit, reason));
+    }
+
+    /**
+     * One admitted transaction; releasing it after a success feeds its duration to the adaptive
+     * limit.
+     */
+    public class Permit {
+
+        private final Kind kind;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile long startNanos = System.nanoTime();
+
+        private Permit(Kind kind) {
+            this.kind = kind;
+        }
+
+        /**
+         * Restarts the duration from now, so that a retried transaction is measured by its last
+         * attempt rather than by its retries and their backoff.
+         */
+        public void markStarted() {
+            startNanos = System.nanoTime();
+        }
+
+        public void release(boolean success) {
+            if (admissionConf.isEnabled() && done.compareAndSet(false, true)) {
+                AdmissionController.this.release(kind, System.nanoTime() - startNanos, success);
+            }
+        }
+    }
+
+    private static class Waiter {
+
+        private final Kind kind;
+        private final CompletableFuture<Permit> permit = new CompletableFuture<>();
+
+        Waiter(Kind kind) {
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * No-load latency estimate: the fastest sample of the previous or current window.
+     */
+    private static class Baseline {
+
+        private long baselineNanos = Long.MAX_VALUE;
+        private long windowMinNanos = Long.MAX_VALUE;
+        private int windowSamples;
+
+        long update(long sampleNanos) {
+            windowMinNanos = Math.min(windowMinNanos, sampleNanos);
+            baselineNanos = Math.min(baselineNanos, sampleNanos);
+            if (++windowSamples >= BASELINE_WINDOW) {
+                // lets the no-load latency rise again after e.g. a larger block batch timeout
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            return baselineNanos;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package care.solve.fabric.service;
+
+/**
+ * Thrown instead of sending a transaction when the channel is at its concurrency limit and the
+ * wait queue is full or the queue wait expired. Nothing reached the peers, so it is safe to retry
+ * later.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
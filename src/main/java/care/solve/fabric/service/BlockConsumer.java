@@ -0,0 +1,21 @@
+package care.solve.fabric.service;
+
+import org.hyperledger.fabric.sdk.BlockInfo;
+
+/**
+ * Processes the committed blocks of the channel in order, without gaps, including those committed
+ * while the application was not running. See {@link BlockReplayer}.
+ */
+public interface BlockConsumer {
+
+    /**
+     * @return the number of the next block to process, kept across restarts
+     */
+    long getNextBlock();
+
+    /**
+     * Processes the block numbered {@link #getNextBlock()} and moves past it; a failure leaves
+     * the block to be delivered again.
+     */
+    void accept(BlockInfo blockInfo);
+}
@@ -0,0 +1,197 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds the {@link BlockConsumer}s every block from the earliest one they still need. The event
+ * hub only delivers blocks committed after it connects, so on start the blocks missed since the
+ * consumers' checkpoints are fetched from the peers, {@code fabric.replay.batch-size} at a time
+ * in parallel on the fetch executor, while live blocks are held back; once the consumers reach
+ * the chain height the held blocks are delivered and live blocks follow as they arrive. A live
+ * block arriving past a gap, after an event hub reconnect, has the missing ones fetched first.
+ * At most {@code fabric.replay.max-pending-blocks} are held, the oldest ones making room, which
+ * the first held block delivered then fetches like any other gap.
+ */
+public class BlockReplayer implements BlockListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockReplayer.class);
+
+    private final Channel channel;
+    private final List<BlockConsumer> consumers;
+    private final HFProperties.Replay replayConf;
+    private final Executor fabricExecutor;
+    private final Executor fetchExecutor;
+    private final ScheduledExecutorService fabricScheduler;
+
+    private final Object deliveryLock = new Object();
+    // guarded by this
+    private final NavigableMap<Long, BlockEvent> pending = new TreeMap<>();
+    private boolean live;
+    private final AtomicLong chainHeight = new AtomicLong();
+
+    private final Meter replayed;
+    private final Timer batches;
+
+    public BlockReplayer(Channel channel,
+                         List<BlockConsumer> consumers,
+                         HFProperties hfProperties,
+                         Executor fabricExecutor,
+                         Executor fetchExecutor,
+                         ScheduledExecutorService fabricScheduler,
+                         MetricRegistry metricRegistry) {
+        this.channel = channel;
+        this.consumers = new ArrayList<>(consumers);
+        this.replayConf = hfProperties.getReplay();
+        this.fabricExecutor = fabricExecutor;
+        this.fetchExecutor = fetchExecutor;
+        this.fabricScheduler = fabricScheduler;
+
+        this.replayed = metricRegistry.meter("fabric.replay.blocks");
+        this.batches = metricRegistry.timer("fabric.replay.batches");
+        metricRegistry.register("fabric.replay.lag", (Gauge<Long>) () -> Math.max(0, chainHeight.get() - nextBlock()));
+    }
+
+    /**
+     * Starts catching up in the background.
+     */
+    public void start() {
+        if (!consumers.isEmpty()) {
+            fabricExecutor.execute(this::catchUp);
+        }
+    }
+
+    private void catchUp() {
+        try {
+            while (true) {
+                long height = channel.queryBlockchainInfo().getHeight();
+                chainHeight.accumulateAndGet(height, Math::max);
+                long next = nextBlock();
+                if (next >= height) {
+                    break;
+                }
+
+                replay(next, Math.min(height, next + replayConf.getBatchSize()));
+                if (nextBlock() == next) {
+                    throw new RuntimeException(String.format("Block %d was not accepted", next));
+                }
+            }
+        } catch (InvalidArgumentException | ProposalException | RuntimeException e) {
+            logger.warn("Catching up from block {} failed, retrying in {} ms", nextBlock(), replayConf.getRetryMillis(), e);
+            fabricScheduler.schedule(this::start, replayConf.getRetryMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        goLive();
+    }
+
+    private void replay(long from, long to) {
+        try (Timer.Context ignored = batches.time()) {
+            List<CompletableFuture<BlockInfo>> blocks = new ArrayList<>();
+            for (long number = from; number < to; number++) {
+                long blockNumber = number;
+                // not on the executor running the catch-up, which would wait on its own tasks
+                blocks.add(CompletableFuture.supplyAsync(() -> queryBlock(blockNumber), fetchExecutor));
+            }
+
+            synchronized (deliveryLock) {
+                for (CompletableFuture<BlockInfo> block : blocks) {
+                    dispatch(block.join());
+                }
+            }
+        }
+        replayed.mark(to - from);
+    }
+
+    private BlockInfo queryBlock(long number) {
+        try {
+            return channel.queryBlockByNumber(number);
+        } catch (InvalidArgumentException | ProposalException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void goLive() {
+        synchronized (deliveryLock) {
+            List<BlockEvent> held;
+            synchronized (this) {
+                live = true;
+                held = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+            held.forEach(this::deliver);
+        }
+        logger.info("Caught up with block {}, following live blocks", nextBlock());
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        chainHeight.accumulateAndGet(blockEvent.getBlockNumber() + 1, Math::max);
+        synchronized (this) {
+            if (!live) {
+                pending.put(blockEvent.getBlockNumber(), blockEvent);
+                if (pending.size() > replayConf.getMaxPendingBlocks()) {
+                    pending.pollFirstEntry();
+                }
+                return;
+            }
+        }
+
+        synchronized (deliveryLock) {
+            deliver(blockEvent);
+        }
+    }
+
+    private void deliver(BlockEvent blockEvent) {
+        long number = blockEvent.getBlockNumber();
+        try {
+            for (long missing = nextBlock(); missing < number; missing++) {
+                dispatch(channel.queryBlockByNumber(missing));
+            }
+        } catch (InvalidArgumentException | ProposalException | RuntimeException e) {
+            // the next block retries from the same one
+            logger.warn("Cannot fetch blocks {} to {} missed by the event hub", nextBlock(), number - 1, e);
+            return;
+        }
+        dispatch(blockEvent);
+    }
+
+    private void dispatch(BlockInfo blockInfo) {
+        for (BlockConsumer consumer : consumers) {
+            if (consumer.getNextBlock() != blockInfo.getBlockNumber()) {
+                continue;
+            }
+
+            try {
+                consumer.accept(blockInfo);
+            } catch (RuntimeException e) {
+                logger.warn("{} failed on block {}", consumer.getClass().getSimpleName(), blockInfo.getBlockNumber(), e);
+            }
+        }
+    }
+
+    private long nextBlock() {
+        return consumers.stream().mapToLong(BlockConsumer::getNextBlock).min().orElse(Long.MAX_VALUE);
+    }
+}
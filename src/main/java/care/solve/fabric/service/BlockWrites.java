@@ -0,0 +1,47 @@
+package care.solve.fabric.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+
+/**
+ * Walks the key writes of the valid endorser transactions in a block.
+ */
+final class BlockWrites {
+
+    @FunctionalInterface
+    interface WriteConsumer {
+        void accept(String namespace, KvRwset.KVWrite write);
+    }
+
+    private BlockWrites() {
+    }
+
+    static void forEach(BlockInfo blockInfo, WriteConsumer consumer) {
+        for (BlockInfo.EnvelopeInfo envelopeInfo : blockInfo.getEnvelopeInfos()) {
+            if (envelopeInfo.getType() != BlockInfo.EnvelopeType.TRANSACTION_ENVELOPE || !envelopeInfo.isValid()) {
+                continue;
+            }
+
+            BlockInfo.TransactionEnvelopeInfo transactionInfo = (BlockInfo.TransactionEnvelopeInfo) envelopeInfo;
+            for (BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo actionInfo : transactionInfo.getTransactionActionInfos()) {
+                TxReadWriteSetInfo rwsetInfo = actionInfo.getTxReadWriteSet();
+                if (rwsetInfo == null) {
+                    continue;
+                }
+
+                for (TxReadWriteSetInfo.NsRwsetInfo nsRwsetInfo : rwsetInfo.getNsRwsetInfos()) {
+                    try {
+                        for (KvRwset.KVWrite write : nsRwsetInfo.getRwset().getWritesList()) {
+                            consumer.accept(nsRwsetInfo.getNamespace(), write);
+                        }
+                    } catch (InvalidProtocolBufferException e) {
+                        throw new RuntimeException(String.format("Cannot parse read-write set of %s in block %d",
+                                nsRwsetInfo.getNamespace(), blockInfo.getBlockNumber()), e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package care.solve.fabric.service;
+
+/**
+ * Resolves the name of the user on whose behalf the current transaction is sent,
+ * e.g. from the security context of the request thread.
+ */
+public interface CallerIdentityResolver {
+
+    /**
+     * @return enrolled user name, or {@code null} to sign with the default sample user
+     */
+    String resolveUserName();
+
+}
@@ -0,0 +1,101 @@
+package care.solve.fabric.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the resolved {@link ChaincodeID} of the latest instantiated chaincode so that transactions
+ * do not have to query the peer for it. The cached id is refreshed after instantiate/upgrade and
+ * whenever a committed block carries a write to the lifecycle system chaincode.
+ */
+public class ChaincodeIdCache implements BlockListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChaincodeIdCache.class);
+
+    static final String LIFECYCLE_CHAINCODE = "lscc";
+
+    private final Supplier<ChaincodeID> loader;
+    private final AtomicReference<ChaincodeID> latest = new AtomicReference<>();
+
+    private final Meter hits;
+    private final Meter refreshes;
+
+    public ChaincodeIdCache(Supplier<ChaincodeID> loader, MetricRegistry metricRegistry) {
+        this.loader = loader;
+        this.hits = metricRegistry.meter("fabric.chaincode.id.hits");
+        this.refreshes = metricRegistry.meter("fabric.chaincode.id.refreshes");
+    }
+
+    public ChaincodeID get() {
+        ChaincodeID chaincodeID = latest.get();
+        if (chaincodeID != null) {
+            hits.mark();
+            return chaincodeID;
+        }
+
+        return refreshIfAbsent();
+    }
+
+    public synchronized ChaincodeID refresh() {
+        ChaincodeID chaincodeID = loader.get();
+        latest.set(chaincodeID);
+        refreshes.mark();
+        logger.info("Resolved chaincode {} version {}", chaincodeID.getName(), chaincodeID.getVersion());
+
+        return chaincodeID;
+    }
+
+    public void invalidate() {
+        latest.set(null);
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        if (!containsLifecycleWrite(blockEvent)) {
+            return;
+        }
+
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.warn("Cannot refresh chaincode id after lifecycle transaction in block {}", blockEvent.getBlockNumber(), e);
+            invalidate();
+        }
+    }
+
+    private synchronized ChaincodeID refreshIfAbsent() {
+        ChaincodeID chaincodeID = latest.get();
+        if (chaincodeID != null) {
+            hits.mark();
+            return chaincodeID;
+        }
+
+        return refresh();
+    }
+
+    private boolean containsLifecycleWrite(BlockInfo blockInfo) {
+        AtomicBoolean found = new AtomicBoolean();
+        try {
+            BlockWrites.forEach(blockInfo, (namespace, write) -> {
+                if (LIFECYCLE_CHAINCODE.equals(namespace)) {
+                    found.set(true);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Cannot inspect block {} for lifecycle transactions", blockInfo.getBlockNumber(), e);
+            return true;
+        }
+
+        return found.get();
+    }
+}
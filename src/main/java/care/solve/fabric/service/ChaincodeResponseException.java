@@ -0,0 +1,26 @@
+package care.solve.fabric.service;
+
+/**
+ * Thrown when a peer executed the proposal and the chaincode answered with an error status. The
+ * peer itself worked, so this neither counts against its circuit breaker nor sends the call to
+ * another peer.
+ */
+public class ChaincodeResponseException extends RuntimeException {
+
+    private final String peerName;
+    private final int status;
+
+    public ChaincodeResponseException(String peerName, int status, String message) {
+        super("Chaincode on peer " + peerName + " answered status " + status + ": " + message);
+        this.peerName = peerName;
+        this.status = status;
+    }
+
+    public String getPeerName() {
+        return peerName;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -2,7 +2,8 @@ package care.solve.fabric.service;
 
 import care.solve.fabric.config.ChaincodeProperties;
 import care.solve.fabric.entity.ChaincodeMeta;
-import com.google.common.collect.ImmutableSet;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.hyperledger.fabric.protos.peer.Query;
 import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
 import org.hyperledger.fabric.sdk.ChaincodeID;
@@ -10,7 +11,6 @@ import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.HFClient;
 import org.hyperledger.fabric.sdk.InstallProposalRequest;
 import org.hyperledger.fabric.sdk.InstantiateProposalRequest;
-import org.hyperledger.fabric.sdk.Orderer;
 import org.hyperledger.fabric.sdk.Peer;
 import org.hyperledger.fabric.sdk.ProposalResponse;
 import org.hyperledger.fabric.sdk.UpgradeProposalRequest;
@@ -41,11 +41,24 @@ public class ChaincodeService {
 
     private ChaincodeProperties chaincodeProperties;
     private Channel channel;
+    private CircuitBreakers circuitBreakers;
+    private OrdererPool ordererPool;
+    private ChaincodeIdCache chaincodeIdCache;
+    private MetricRegistry metricRegistry;
 
     @Autowired
-    public ChaincodeService(ChaincodeProperties chaincodeProperties, Channel channel) {
+    public ChaincodeService(ChaincodeProperties chaincodeProperties, Channel channel, CircuitBreakers circuitBreakers, OrdererPool ordererPool,
+                            MetricRegistry metricRegistry) {
         this.chaincodeProperties = chaincodeProperties;
         this.channel = channel;
+        this.circuitBreakers = circuitBreakers;
+        this.ordererPool = ordererPool;
+        this.chaincodeIdCache = new ChaincodeIdCache(this::queryLatestChaincodeId, metricRegistry);
+        this.metricRegistry = metricRegistry;
+    }
+
+    public ChaincodeIdCache getChaincodeIdCache() {
+        return chaincodeIdCache;
     }
 
     public void installChaincode(HFClient client, ChaincodeMeta chaincodeMeta, Collection<Peer> peers, File tarGzFile) throws InvalidArgumentException, ProposalException, IOException {
@@ -67,7 +80,10 @@ public class ChaincodeService {
             installProposalRequest.setChaincodeEndorsementPolicy(endorsementPolicy);
         }
 
-        Collection<ProposalResponse> proposalResponses = client.sendInstallProposal(installProposalRequest, peers);
+        Collection<ProposalResponse> proposalResponses;
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.install").time()) {
+            proposalResponses = client.sendInstallProposal(installProposalRequest, peers);
+        }
 
         for (ProposalResponse response : proposalResponses) {
             if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
@@ -79,7 +95,7 @@ public class ChaincodeService {
 
     }
 
-    public void instantiateChaincode(HFClient client, ChaincodeMeta chaincodeMeta, Channel channel, Orderer orderer) throws InvalidArgumentException, IOException, ChaincodeEndorsementPolicyParseException, ProposalException, ExecutionException, InterruptedException {
+    public void instantiateChaincode(HFClient client, ChaincodeMeta chaincodeMeta, Channel channel) throws InvalidArgumentException, IOException, ChaincodeEndorsementPolicyParseException, ProposalException, ExecutionException, InterruptedException {
         InstantiateProposalRequest instantiateProposalRequest = client.newInstantiationProposalRequest();
         ChaincodeID chaincodeID = ChaincodeID.newBuilder()
                 .setName(chaincodeMeta.getName())
@@ -96,7 +112,10 @@ public class ChaincodeService {
         tm.put("method", "InstantiateProposalRequest".getBytes(UTF_8));
         instantiateProposalRequest.setTransientMap(tm);
 
-        Collection<ProposalResponse> proposalResponses = channel.sendInstantiationProposal(instantiateProposalRequest, channel.getPeers());
+        Collection<ProposalResponse> proposalResponses;
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.instantiate.endorse").time()) {
+            proposalResponses = channel.sendInstantiationProposal(instantiateProposalRequest, channel.getPeers());
+        }
 
         for (ProposalResponse response : proposalResponses) {
             if (response.isVerified() && response.getStatus() == ProposalResponse.Status.SUCCESS) {
@@ -106,10 +125,13 @@ public class ChaincodeService {
             }
         }
 
-        channel.sendTransaction(proposalResponses, ImmutableSet.of(orderer)).get();
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.instantiate.commit").time()) {
+            ordererPool.broadcast(channel, proposalResponses, client.getUserContext()).get();
+        }
+        chaincodeIdCache.refresh();
     }
 
-    public void upgradeChaincode(HFClient client, ChaincodeMeta chaincodeMeta, Channel channel, Orderer orderer) throws InvalidArgumentException, ProposalException, IOException, ExecutionException, InterruptedException {
+    public void upgradeChaincode(HFClient client, ChaincodeMeta chaincodeMeta, Channel channel) throws InvalidArgumentException, ProposalException, IOException, ExecutionException, InterruptedException {
         UpgradeProposalRequest upgradeProposalRequest = client.newUpgradeProposalRequest();
         upgradeProposalRequest.setProposalWaitTime(20000L);
         ChaincodeID chaincodeID = ChaincodeID.newBuilder()
@@ -125,7 +147,10 @@ public class ChaincodeService {
         tm.put("HyperLedgerFabric", "InstantiateProposalRequest:JavaSDK".getBytes(UTF_8));
         tm.put("method", "InstantiateProposalRequest".getBytes(UTF_8));
         upgradeProposalRequest.setTransientMap(tm);
-        Collection<ProposalResponse> proposalResponses = channel.sendUpgradeProposal(upgradeProposalRequest, channel.getPeers());
+        Collection<ProposalResponse> proposalResponses;
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.upgrade.endorse").time()) {
+            proposalResponses = channel.sendUpgradeProposal(upgradeProposalRequest, channel.getPeers());
+        }
 
         for (ProposalResponse response : proposalResponses) {
             if (response.isVerified() && response.getStatus() == ProposalResponse.Status.SUCCESS) {
@@ -135,15 +160,48 @@ public class ChaincodeService {
             }
         }
 
-        channel.sendTransaction(proposalResponses, ImmutableSet.of(orderer)).get();
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.upgrade.commit").time()) {
+            ordererPool.broadcast(channel, proposalResponses, client.getUserContext()).get();
+        }
+        chaincodeIdCache.refresh();
     }
 
+    /**
+     * Returns the latest chaincode id from the cache, querying the peer only when nothing is cached yet.
+     */
+    public ChaincodeID getLatestChaincodeId() {
+        return chaincodeIdCache.get();
+    }
+
+    /**
+     * Asks the healthiest available peer for the instantiated chaincodes.
+     */
     public ChaincodeID queryLatestChaincodeId() { //todo filter by name
-        try {
-            List<Query.ChaincodeInfo> chaincodeInfos = channel.queryInstantiatedChaincodes(channel.getPeers().iterator().next());
+        try (Timer.Context ignored = metricRegistry.timer("fabric.chaincode.id.query").time()) {
+            List<Peer> ranked = circuitBreakers.rankedPeers(channel.getPeers());
+            if (ranked.isEmpty()) {
+                throw new RuntimeException("Channel " + channel.getName() + " has no peer to query the chaincode id from");
+            }
+            // the probe slot of a half open peer is only taken by the peer actually asked
+            Peer peer = ranked.stream()
+                    .filter(candidate -> circuitBreakers.tryAcquireProbe(candidate.getName()))
+                    .findFirst()
+                    .orElse(ranked.get(0));
+            long start = System.nanoTime();
+            List<Query.ChaincodeInfo> chaincodeInfos;
+            try {
+                chaincodeInfos = channel.queryInstantiatedChaincodes(peer);
+            } catch (InvalidArgumentException | ProposalException e) {
+                circuitBreakers.recordFailure(peer.getName(), System.nanoTime() - start);
+                throw e;
+            }
+            circuitBreakers.recordSuccess(peer.getName(), System.nanoTime() - start);
             List<Query.ChaincodeInfo> sortedChaincodeInfos = chaincodeInfos.stream()
                     .sorted(Comparator.comparing(Query.ChaincodeInfo::getVersion).reversed())
                     .collect(Collectors.toList());
+            if (sortedChaincodeInfos.isEmpty()) {
+                throw new RuntimeException("No chaincode is instantiated on channel " + channel.getName());
+            }
             Query.ChaincodeInfo latestChaincodeInfo = sortedChaincodeInfos.get(0);
 
             return ChaincodeID.newBuilder()
@@ -167,7 +225,7 @@ public class ChaincodeService {
         }
     }
 
-    private ChaincodeEndorsementPolicy getChaincodeEndorsementPolicy () {
+    public ChaincodeEndorsementPolicy getChaincodeEndorsementPolicy() {
         File config = new File(chaincodeProperties.getEndorsementPolicyFile());
 
         if (!config.exists()) {
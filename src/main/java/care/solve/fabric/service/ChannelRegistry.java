@@ -0,0 +1,264 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.ChaincodeProperties;
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+import org.hyperledger.fabric.sdk.exception.TransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The {@link TransactionService} of each channel in {@code fabric.channels}, besides the default
+ * one in {@code fabric.channel}. A channel is joined on first use, with its own chaincode id cache,
+ * query cache, stage and query pools and admission limit, so that a busy channel cannot take the
+ * threads or slots of the others; its {@code admission} and {@code pools} default to the shared
+ * settings. Its metrics are published as {@code fabric.channel.<name>.*}. A channel that fails to
+ * open is shut down again and leaves no metrics behind, so the next attempt starts clean.
+ */
+public class ChannelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelRegistry.class);
+
+    private final HFProperties hfProperties;
+    private final TransactionService defaultTransactionService;
+    private final ChannelService channelService;
+    private final HFClient peerAdminClient;
+    private final User peerAdminUser;
+    private final HFClientFactory hfClientFactory;
+    private final ChaincodeProperties chaincodeProperties;
+    private final PeerLatencyTracker peerLatencyTracker;
+    private final CircuitBreakers circuitBreakers;
+    private final OrdererPool ordererPool;
+    private final Executor fabricExecutor;
+    private final ScheduledExecutorService fabricScheduler;
+    private final MetricRegistry metricRegistry;
+
+    private final ConcurrentMap<String, ChannelServices> channels = new ConcurrentHashMap<>();
+
+    public ChannelRegistry(HFProperties hfProperties,
+                           TransactionService defaultTransactionService,
+                           ChannelService channelService,
+                           HFClient peerAdminClient,
+                           User peerAdminUser,
+                           HFClientFactory hfClientFactory,
+                           ChaincodeProperties chaincodeProperties,
+                           PeerLatencyTracker peerLatencyTracker,
+                           CircuitBreakers circuitBreakers,
+                           OrdererPool ordererPool,
+                           Executor fabricExecutor,
+                           ScheduledExecutorService fabricScheduler,
+                           MetricRegistry metricRegistry) {
+        this.hfProperties = hfProperties;
+        this.defaultTransactionService = defaultTransactionService;
+        this.channelService = channelService;
+        this.peerAdminClient = peerAdminClient;
+        this.peerAdminUser = peerAdminUser;
+        this.hfClientFactory = hfClientFactory;
+        this.chaincodeProperties = chaincodeProperties;
+        this.peerLatencyTracker = peerLatencyTracker;
+        this.circuitBreakers = circuitBreakers;
+        this.ordererPool = ordererPool;
+        this.fabricExecutor = fabricExecutor;
+        this.fabricScheduler = fabricScheduler;
+        this.metricRegistry = metricRegistry;
+    }
+
+    public Set<String> getChannelNames() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(hfProperties.getChannel().getName());
+        names.addAll(hfProperties.getChannels().keySet());
+
+        return names;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the channel is not configured
+     */
+    public TransactionService getTransactionService(String channelName) {
+        if (channelName.equals(hfProperties.getChannel().getName())) {
+            return defaultTransactionService;
+        }
+
+        HFProperties.Channel channelConf = hfProperties.getChannels().get(channelName);
+        if (channelConf == null) {
+            throw new IllegalArgumentException(String.format("Channel %s is not configured, only %s", channelName, getChannelNames()));
+        }
+
+        return channels.computeIfAbsent(channelName, ChannelServices::new).get(channelConf);
+    }
+
+    public void shutdown() {
+        channels.values().forEach(ChannelServices::shutdown);
+    }
+
+    private Opened open(String channelName, HFProperties.Channel channelConf)
+            throws InvalidArgumentException, TransactionException, ProposalException, IOException {
+        if (channelConf.getName() == null) {
+            channelConf.setName(channelName);
+        }
+        long start = System.nanoTime();
+        Channel channel = channelService.openChannel(channelConf, peerAdminClient, peerAdminUser);
+        FabricExecutors fabricExecutors = null;
+        try {
+            MetricRegistry channelMetrics = scoped(channelName);
+            fabricExecutors = new FabricExecutors(
+                    channelConf.getPools() == null ? hfProperties.getPools() : channelConf.getPools(), channelMetrics);
+            TransactionService transactionService = createTransactionService(channelName, channelConf, channel, fabricExecutors, channelMetrics);
+            logger.info("Opened channel {} in {} ms", channelName, (System.nanoTime() - start) / 1_000_000);
+
+            return new Opened(channel, fabricExecutors, transactionService);
+        } catch (Exception e) {
+            logger.warn("Could not open channel {}, shutting it down", channelName);
+            if (fabricExecutors != null) {
+                fabricExecutors.shutdown();
+            }
+            channel.shutdown(true);
+            removeMetrics(channelName);
+            throw e;
+        }
+    }
+
+    private TransactionService createTransactionService(String channelName, HFProperties.Channel channelConf, Channel channel,
+                                                        FabricExecutors fabricExecutors, MetricRegistry channelMetrics)
+            throws InvalidArgumentException {
+        ChaincodeService chaincodeService = new ChaincodeService(chaincodeProperties, channel, circuitBreakers, ordererPool, channelMetrics);
+        channel.registerBlockListener(chaincodeService.getChaincodeIdCache());
+        QueryResultCache queryResultCache = new QueryResultCache(hfProperties, channelMetrics);
+        if (queryResultCache.isEnabled()) {
+            channel.registerBlockListener(queryResultCache);
+        }
+        TransactionMetrics transactionMetrics = new TransactionMetrics(channelMetrics);
+
+        return new TransactionServiceImpl(hfClientFactory, channel, chaincodeService,
+                fabricExecutor, fabricExecutors, hfProperties,
+                new EndorserSelector(chaincodeService.getChaincodeEndorsementPolicy(), hfProperties, peerLatencyTracker),
+                circuitBreakers,
+                new QueryRouter(peerLatencyTracker, circuitBreakers, fabricExecutors.query(), fabricScheduler, hfProperties),
+                ordererPool,
+                queryResultCache,
+                transactionMetrics,
+                new AdmissionController(channelName,
+                        channelConf.getAdmission() == null ? hfProperties.getAdmission() : channelConf.getAdmission(), fabricScheduler, metricRegistry),
+                new InvokeRetrier(hfProperties, fabricScheduler, transactionMetrics));
+    }
+
+    /**
+     * Drops what the channel published in the shared registry, including its admission metrics.
+     */
+    private void removeMetrics(String channelName) {
+        String channelPrefix = MetricRegistry.name("fabric.channel", channelName) + ".";
+        String admissionPrefix = MetricRegistry.name("fabric.admission", channelName) + ".";
+        metricRegistry.removeMatching((name, metric) -> name.startsWith(channelPrefix) || name.startsWith(admissionPrefix));
+    }
+
+    /**
+     * A registry whose metrics show up in the shared one under {@code fabric.channel.<name>}.
+     */
+    private MetricRegistry scoped(String channelName) {
+        String prefix = MetricRegistry.name("fabric.channel", channelName);
+        MetricRegistry channelMetrics = new MetricRegistry();
+        channelMetrics.addListener(new MetricRegistryListener.Base() {
+            @Override
+            public void onGaugeAdded(String name, Gauge<?> gauge) {
+                forward(name, gauge);
+            }
+
+            @Override
+            public void onCounterAdded(String name, Counter counter) {
+                forward(name, counter);
+            }
+
+            @Override
+            public void onHistogramAdded(String name, Histogram histogram) {
+                forward(name, histogram);
+            }
+
+            @Override
+            public void onMeterAdded(String name, Meter meter) {
+                forward(name, meter);
+            }
+
+            @Override
+            public void onTimerAdded(String name, Timer timer) {
+                forward(name, timer);
+            }
+
+            private void forward(String name, Metric metric) {
+                metricRegistry.register(MetricRegistry.name(prefix, name.startsWith("fabric.") ? name.substring("fabric.".length()) : name), metric);
+            }
+        });
+
+        return channelMetrics;
+    }
+
+    /**
+     * Opens its channel once, on first use; a failed attempt is made again by the next caller.
+     */
+    private class ChannelServices {
+
+        private final String channelName;
+        private volatile Opened opened;
+
+        ChannelServices(String channelName) {
+            this.channelName = channelName;
+        }
+
+        TransactionService get(HFProperties.Channel channelConf) {
+            Opened current = opened;
+            if (current == null) {
+                synchronized (this) {
+                    current = opened;
+                    if (current == null) {
+                        try {
+                            current = open(channelName, channelConf);
+                        } catch (InvalidArgumentException | TransactionException | ProposalException | IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        opened = current;
+                    }
+                }
+            }
+
+            return current.transactionService;
+        }
+
+        synchronized void shutdown() {
+            if (opened != null) {
+                opened.fabricExecutors.shutdown();
+                opened.channel.shutdown(true);
+            }
+        }
+    }
+
+    private static class Opened {
+        private final Channel channel;
+        private final FabricExecutors fabricExecutors;
+        private final TransactionService transactionService;
+
+        Opened(Channel channel, FabricExecutors fabricExecutors, TransactionService transactionService) {
+            this.channel = channel;
+            this.fabricExecutors = fabricExecutors;
+            this.transactionService = transactionService;
+        }
+    }
+}
@@ -17,7 +17,11 @@ import org.springframework.stereotype.Service;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 @Service
 public class ChannelService {
@@ -37,11 +41,13 @@ public class ChannelService {
             String channelName,
             HFClient client,
             List<Peer> peers,
-            Orderer orderer,
+            List<Orderer> orderers,
             EventHub eventHub) throws InvalidArgumentException, TransactionException, ProposalException {
         Channel newChannel = client.newChannel(channelName);
 
-        newChannel.addOrderer(orderer);
+        for (Orderer orderer : orderers) {
+            newChannel.addOrderer(orderer);
+        }
         peers.forEach(peer -> {
             try {
                 newChannel.addPeer(peer);
@@ -56,17 +62,24 @@ public class ChannelService {
         return newChannel;
     }
 
-    public Channel constructChannel(String channelName, HFClient client, User user, List<Peer> peers, Orderer orderer, EventHub eventHub) throws IOException, InvalidArgumentException, TransactionException, ProposalException {
-        FileInputStream genesisBlockInputStream = new FileInputStream(hfProperties.getChannel().getGenesisBlockFile());
+    public Channel constructChannel(String channelName, HFClient client, User user, List<Peer> peers, List<Orderer> orderers, EventHub eventHub) throws IOException, InvalidArgumentException, TransactionException, ProposalException {
+        return constructChannel(channelName, hfProperties.getChannel().getGenesisBlockFile(), client, user, peers, orderers, eventHub);
+    }
+
+    private Channel constructChannel(String channelName, String genesisBlockFile, HFClient client, User user, List<Peer> peers, List<Orderer> orderers, EventHub eventHub) throws IOException, InvalidArgumentException, TransactionException, ProposalException {
+        FileInputStream genesisBlockInputStream = new FileInputStream(genesisBlockFile);
         byte[] bytes = IOUtils.toByteArray(genesisBlockInputStream);
         ChannelConfiguration channelConfiguration = new ChannelConfiguration(bytes);
 
         Channel newChannel = client.newChannel(
                 channelName,
-                orderer,
+                orderers.get(0),
                 channelConfiguration,
                 client.getChannelConfigurationSignature(channelConfiguration, user)
         );
+        for (Orderer orderer : orderers.subList(1, orderers.size())) {
+            newChannel.addOrderer(orderer);
+        }
         newChannel.addEventHub(eventHub);
         peers.forEach(peer -> {
             try {
@@ -79,4 +92,77 @@ public class ChannelService {
 
         return newChannel;
     }
+
+    /**
+     * Joins the clinic peers to the channel, creating it from its genesis block when they are not
+     * in it yet. The SDK ties a peer, orderer or event hub to a single channel, so each channel
+     * gets its own.
+     */
+    public Channel openChannel(HFProperties.Channel channelConf, HFClient client, User user) throws InvalidArgumentException, TransactionException, ProposalException, IOException {
+        HFProperties.Organization clinicOrg = hfProperties.getOrgs().get("clinic");
+        List<Peer> peers = new ArrayList<>();
+        for (HFProperties.Peer peerConf : clinicOrg.getPeers()) {
+            peers.add(client.newPeer(peerConf.getName(), peerConf.getGrpcUrl(), constructPeerProperties(peerConf.getName(), peerConf.getTlsCertFile())));
+        }
+        List<Orderer> orderers = constructOrderers(client);
+        HFProperties.Peer eventHubPeer = clinicOrg.getPeers().get(0);
+        EventHub eventHub = client.newEventHub(eventHubPeer.getName(), eventHubPeer.getEventHub().getGrpcUrl(),
+                constructPeerProperties(eventHubPeer.getName(), eventHubPeer.getTlsCertFile()));
+
+        if (isChannelExists(channelConf.getName(), peers.get(0), client)) {
+            return connectToChannel(channelConf.getName(), client, peers, orderers, eventHub);
+        }
+
+        return constructChannel(channelConf.getName(), channelConf.getGenesisBlockFile(), client, user, peers, orderers, eventHub);
+    }
+
+    /**
+     * Every orderer configured in any organization, once per name, in configuration order.
+     */
+    public List<Orderer> constructOrderers(HFClient client) throws InvalidArgumentException {
+        Map<String, Orderer> orderers = new LinkedHashMap<>();
+        for (HFProperties.Organization org : hfProperties.getOrgs().values()) {
+            if (org.getOrderers() == null) {
+                continue;
+            }
+            for (HFProperties.Orderer ordererConf : org.getOrderers()) {
+                if (!orderers.containsKey(ordererConf.getName())) {
+                    orderers.put(ordererConf.getName(), client.newOrderer(ordererConf.getName(), ordererConf.getGrpcUrl(),
+                            constructOrdererProperties(ordererConf.getName(), ordererConf.getTlsCertFile())));
+                }
+            }
+        }
+        if (orderers.isEmpty()) {
+            throw new InvalidArgumentException("No orderer is configured");
+        }
+
+        return new ArrayList<>(orderers.values());
+    }
+
+    public Properties constructPeerProperties(final String peerName, final String peerTLSCertFile) {
+
+        Properties properties = new Properties();
+        if (peerTLSCertFile != null) {
+            properties.setProperty("pemFile", peerTLSCertFile);
+        }
+        properties.setProperty("hostnameOverride", peerName);
+        properties.setProperty("sslProvider", "openSSL");
+        properties.setProperty("negotiationType", "TLS");
+
+        return properties;
+    }
+
+    public Properties constructOrdererProperties(String ordererName, String ordererTlsCertFile) {
+        Properties properties = new Properties();
+        if (ordererTlsCertFile != null) {
+            properties.setProperty("pemFile", ordererTlsCertFile);
+        }
+        properties.setProperty("hostnameOverride", ordererName);
+        properties.setProperty("sslProvider", "openSSL");
+        properties.setProperty("negotiationType", "TLS");
+
+        properties.setProperty("ordererWaitTimeMilliSecs", "90000");
+
+        return properties;
+    }
 }
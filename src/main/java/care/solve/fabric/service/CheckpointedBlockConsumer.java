@@ -0,0 +1,61 @@
+package care.solve.fabric.service;
+
+import org.hyperledger.fabric.sdk.BlockInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link BlockConsumer} over a plain block handler, keeping the number of the next block in a
+ * checkpoint file that is replaced after every handled block.
+ */
+public class CheckpointedBlockConsumer implements BlockConsumer {
+
+    private final File checkpointFile;
+    private final Consumer<BlockInfo> handler;
+    private volatile long nextBlock;
+
+    public CheckpointedBlockConsumer(File checkpointFile, Consumer<BlockInfo> handler) {
+        this.checkpointFile = checkpointFile;
+        this.handler = handler;
+        this.nextBlock = read(checkpointFile);
+    }
+
+    @Override
+    public long getNextBlock() {
+        return nextBlock;
+    }
+
+    @Override
+    public synchronized void accept(BlockInfo blockInfo) {
+        handler.accept(blockInfo);
+        write(blockInfo.getBlockNumber() + 1);
+    }
+
+    private void write(long next) {
+        File written = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            Files.write(written.toPath(), Long.toString(next).getBytes(UTF_8));
+            Files.move(written.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write checkpoint %d to %s", next, checkpointFile), e);
+        }
+        nextBlock = next;
+    }
+
+    private static long read(File checkpointFile) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(checkpointFile.toPath()), UTF_8).trim());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot read checkpoint %s", checkpointFile), e);
+        }
+    }
+}
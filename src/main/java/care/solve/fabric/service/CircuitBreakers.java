@@ -0,0 +1,259 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A circuit breaker per peer and orderer, fed with the outcome of every call to it. Errors the
+ * chaincode answered with are successful calls as far as the node is concerned.
+ *
+ * The health score of a node is its success rate discounted by how far its latency exceeds
+ * {@code slow-call-millis}, both from the moving averages of {@link PeerLatencyTracker}. A node
+ * whose score drops below {@code min-health-score} after {@code minimum-calls} is left out of
+ * selection for {@code open-millis}. It is then half open: one call per
+ * {@code probe-interval-millis} gets through, {@code half-open-probes} successes close the breaker
+ * again and a failure reopens it. When every node is open they are all used anyway.
+ *
+ * Filtering candidates with {@link #available} has no side effects; only the node a call is
+ * actually sent to takes the probe slot of its breaker, through {@link #tryAcquireProbe}.
+ *
+ * Score and state ({@code 0} closed, {@code 1} half open, {@code 2} open) are published as
+ * {@code fabric.node.<name>.health} and {@code fabric.node.<name>.state}.
+ */
+public class CircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakers.class);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final PeerLatencyTracker peerLatencyTracker;
+    private final HFProperties.CircuitBreaker breakerConf;
+    private final MetricRegistry metricRegistry;
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakers(PeerLatencyTracker peerLatencyTracker, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        this.peerLatencyTracker = peerLatencyTracker;
+        this.breakerConf = hfProperties.getCircuitBreaker();
+        this.metricRegistry = metricRegistry;
+    }
+
+    public void recordSuccess(String node, long elapsedNanos) {
+        peerLatencyTracker.recordSuccess(node, elapsedNanos);
+        breakerOf(node).onOutcome(true);
+    }
+
+    public void recordFailure(String node, long elapsedNanos) {
+        peerLatencyTracker.recordFailure(node, elapsedNanos);
+        breakerOf(node).onOutcome(false);
+    }
+
+    /**
+     * The outcome of a call whose latency is not the node's own, such as one endorsement of a
+     * proposal sent to several peers at once.
+     */
+    public void recordOutcome(String node, boolean success) {
+        peerLatencyTracker.recordOutcome(node, !success);
+        breakerOf(node).onOutcome(success);
+    }
+
+    /**
+     * Whether a failed proposal response is the peer's fault: it did not answer in time or at all,
+     * or its answer did not verify. A chaincode that answered with an error status is not.
+     */
+    public static boolean isNodeFailure(ProposalResponse response) {
+        if (response.getStatus() == ProposalResponse.Status.SUCCESS && response.isVerified()) {
+            return false;
+        }
+        if (response.getProposalResponse() == null) {
+            // the SDK reports transport errors and an expired wait time without a peer response
+            return true;
+        }
+
+        return response.getProposalResponse().getResponse().getStatus() < 400;
+    }
+
+    /**
+     * @return 1 for a node answering fast and without errors, down to 0
+     */
+    public double getHealthScore(String node) {
+        double latencyMillis = peerLatencyTracker.getLatencyMillis(node);
+        double latencyFactor = latencyMillis <= breakerConf.getSlowCallMillis() ? 1 : breakerConf.getSlowCallMillis() / latencyMillis;
+
+        return (1 - peerLatencyTracker.getErrorRate(node)) * latencyFactor;
+    }
+
+    public State getState(String node) {
+        return breakerOf(node).getState();
+    }
+
+    /**
+     * Whether the node's breaker would let a call through now, without changing its state.
+     */
+    public boolean isAvailable(String node) {
+        return !breakerConf.isEnabled() || breakerOf(node).isAvailable();
+    }
+
+    /**
+     * Lets a call to the node through, to be called right before sending it. A breaker due to be
+     * half open becomes so, and a half open one hands out its probe slot; false when the slot is
+     * taken or the breaker is still open, e.g. by another call since the node was selected.
+     */
+    public boolean tryAcquireProbe(String node) {
+        return !breakerConf.isEnabled() || breakerOf(node).tryAcquireProbe();
+    }
+
+    public List<Peer> availablePeers(Collection<Peer> peers) {
+        return available(peers, Peer::getName);
+    }
+
+    /**
+     * Available peers, healthiest first.
+     */
+    public List<Peer> rankedPeers(Collection<Peer> peers) {
+        return ranked(peers, Peer::getName);
+    }
+
+    /**
+     * The nodes whose breaker lets a call through, in their original order.
+     */
+    public <T> List<T> available(Collection<T> nodes, Function<T, String> nameOf) {
+        if (!breakerConf.isEnabled()) {
+            return new ArrayList<>(nodes);
+        }
+
+        List<T> available = nodes.stream()
+                .filter(node -> breakerOf(nameOf.apply(node)).isAvailable())
+                .collect(Collectors.toList());
+        if (available.isEmpty()) {
+            logger.debug("No node of {} is available, using all", nodes.size());
+            return new ArrayList<>(nodes);
+        }
+
+        return available;
+    }
+
+    private <T> List<T> ranked(Collection<T> nodes, Function<T, String> nameOf) {
+        return available(nodes, nameOf).stream()
+                .sorted(Comparator.comparingDouble(node -> -getHealthScore(nameOf.apply(node))))
+                .collect(Collectors.toList());
+    }
+
+    private Breaker breakerOf(String node) {
+        Breaker breaker = breakers.get(node);
+        if (breaker != null) {
+            return breaker;
+        }
+
+        return breakers.computeIfAbsent(node, name -> {
+            Breaker created = new Breaker(name);
+            String prefix = MetricRegistry.name("fabric.node", name);
+            metricRegistry.register(MetricRegistry.name(prefix, "health"), (Gauge<Double>) () -> getHealthScore(name));
+            metricRegistry.register(MetricRegistry.name(prefix, "state"), (Gauge<Integer>) () -> created.getState().ordinal());
+
+            return created;
+        });
+    }
+
+    private class Breaker {
+
+        private final String node;
+        private final Meter trips;
+
+        private State state = State.CLOSED;
+        private int calls;
+        private int probeSuccesses;
+        private long openedAt;
+        private long lastProbeAt;
+
+        Breaker(String node) {
+            this.node = node;
+            this.trips = metricRegistry.meter(MetricRegistry.name("fabric.node", node, "trips"));
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized boolean isAvailable() {
+            long now = System.nanoTime();
+            switch (state) {
+                case OPEN:
+                    return now - openedAt >= TimeUnit.MILLISECONDS.toNanos(breakerConf.getOpenMillis());
+                case HALF_OPEN:
+                    return now - lastProbeAt >= TimeUnit.MILLISECONDS.toNanos(breakerConf.getProbeIntervalMillis());
+                default:
+                    return true;
+            }
+        }
+
+        synchronized boolean tryAcquireProbe() {
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                if (now - openedAt < TimeUnit.MILLISECONDS.toNanos(breakerConf.getOpenMillis())) {
+                    return false;
+                }
+
+                // scores of the outage would keep the node ranked last and never probed
+                peerLatencyTracker.forget(node);
+                state = State.HALF_OPEN;
+                probeSuccesses = 0;
+                lastProbeAt = now - TimeUnit.MILLISECONDS.toNanos(breakerConf.getProbeIntervalMillis());
+                logger.info("Probing {} again", node);
+            }
+            if (state == State.HALF_OPEN) {
+                if (now - lastProbeAt < TimeUnit.MILLISECONDS.toNanos(breakerConf.getProbeIntervalMillis())) {
+                    return false;
+                }
+                lastProbeAt = now;
+            }
+
+            return true;
+        }
+
+        synchronized void onOutcome(boolean success) {
+            switch (state) {
+                case CLOSED:
+                    if (++calls >= breakerConf.getMinimumCalls() && getHealthScore(node) < breakerConf.getMinHealthScore()) {
+                        open();
+                    }
+                    break;
+                case HALF_OPEN:
+                    if (!success) {
+                        open();
+                    } else if (++probeSuccesses >= breakerConf.getHalfOpenProbes()) {
+                        state = State.CLOSED;
+                        calls = 0;
+                        logger.info("Closed the circuit breaker of {}", node);
+                    }
+                    break;
+                default:
+                    // outcome of a call sent before the breaker opened
+            }
+        }
+
+        private void open() {
+            logger.warn("Opened the circuit breaker of {}, health score {}", node, String.format("%.2f", getHealthScore(node)));
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trips.mark();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package care.solve.fabric.service;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Maps keys to shards by placing {@code virtualNodes} points per shard on a hash ring and taking
+ * the first point at or after the key's hash. Adding a shard only moves the keys that land on its
+ * points, about 1/N of them, and the mapping does not depend on the order the shards are listed in.
+ */
+class ConsistentHashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final List<String> shards;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    ConsistentHashRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("No shards to place on the ring");
+        }
+        this.shards = new ArrayList<>(shards);
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // the smaller name wins a collision, whatever the order
+                ring.merge(hash(shard + "#" + i), shard, (placed, other) -> placed.compareTo(other) <= 0 ? placed : other);
+            }
+        }
+    }
+
+    List<String> getShards() {
+        return shards;
+    }
+
+    String shardOf(String key) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        return HASH.hashString(value, UTF_8).asLong();
+    }
+}
@@ -0,0 +1,215 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.hyperledger.fabric.protos.common.MspPrincipal;
+import org.hyperledger.fabric.protos.common.Policies;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Peer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the endorsing peers for a transaction from the chaincode endorsement policy.
+ *
+ * The signature policy is reduced once to its minimal layouts, i.e. how many signatures each MSP
+ * has to contribute. Every transaction is then sent to one satisfiable layout only, spread either
+ * round-robin or by the best latency/error score of the peers. Without a policy, or when no
+ * layout can be satisfied by the known peers, the proposal goes to every peer as before.
+ */
+public class EndorserSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndorserSelector.class);
+
+    private final HFProperties.Endorsement.Strategy strategy;
+    private final List<Map<String, Integer>> layouts;
+    private final Map<String, String> peerMspIds;
+    private final PeerLatencyTracker peerLatencyTracker;
+
+    private final AtomicInteger layoutCursor = new AtomicInteger();
+    private final AtomicInteger peerCursor = new AtomicInteger();
+
+    public EndorserSelector(ChaincodeEndorsementPolicy endorsementPolicy, HFProperties hfProperties, PeerLatencyTracker peerLatencyTracker) {
+        this.strategy = hfProperties.getEndorsement().getStrategy();
+        this.layouts = endorsementPolicy == null ? Collections.emptyList() : computeLayouts(endorsementPolicy);
+        this.peerMspIds = new HashMap<>();
+        this.peerLatencyTracker = peerLatencyTracker;
+
+        hfProperties.getOrgs().values().stream()
+                .filter(org -> org.getPeers() != null)
+                .forEach(org -> org.getPeers().forEach(peer -> peerMspIds.put(peer.getName(), org.getMspId())));
+    }
+
+    public Collection<Peer> select(Collection<Peer> peers) {
+        if (strategy == HFProperties.Endorsement.Strategy.ALL || layouts.isEmpty()) {
+            return peers;
+        }
+
+        Map<String, List<Peer>> peersByMsp = peers.stream()
+                .filter(peer -> peerMspIds.containsKey(peer.getName()))
+                .collect(Collectors.groupingBy(peer -> peerMspIds.get(peer.getName())));
+        List<Map<String, Integer>> satisfiable = layouts.stream()
+                .filter(layout -> layout.entrySet().stream().allMatch(required ->
+                        peersByMsp.getOrDefault(required.getKey(), Collections.emptyList()).size() >= required.getValue()))
+                .collect(Collectors.toList());
+
+        if (satisfiable.isEmpty()) {
+            return peers;
+        }
+
+        return strategy == HFProperties.Endorsement.Strategy.LEAST_LATENCY
+                ? selectLeastLatency(satisfiable, peersByMsp)
+                : selectRoundRobin(satisfiable, peersByMsp);
+    }
+
+    private Collection<Peer> selectRoundRobin(List<Map<String, Integer>> satisfiable, Map<String, List<Peer>> peersByMsp) {
+        Map<String, Integer> layout = satisfiable.get(Math.floorMod(layoutCursor.getAndIncrement(), satisfiable.size()));
+        int offset = peerCursor.getAndIncrement();
+
+        List<Peer> endorsers = new ArrayList<>();
+        layout.forEach((mspId, count) -> {
+            List<Peer> candidates = peersByMsp.get(mspId);
+            for (int i = 0; i < count; i++) {
+                endorsers.add(candidates.get(Math.floorMod(offset + i, candidates.size())));
+            }
+        });
+
+        return endorsers;
+    }
+
+    private Collection<Peer> selectLeastLatency(List<Map<String, Integer>> satisfiable, Map<String, List<Peer>> peersByMsp) {
+        Comparator<Peer> byLatency = Comparator.comparingDouble(peer -> peerLatencyTracker.getScore(peer.getName()));
+
+        List<Peer> best = null;
+        double bestLatency = Double.MAX_VALUE;
+        for (Map<String, Integer> layout : satisfiable) {
+            List<Peer> endorsers = new ArrayList<>();
+            layout.forEach((mspId, count) -> peersByMsp.get(mspId).stream()
+                    .sorted(byLatency)
+                    .limit(count)
+                    .forEach(endorsers::add));
+
+            // a transaction waits for its slowest endorser
+            double latency = endorsers.stream()
+                    .mapToDouble(peer -> peerLatencyTracker.getScore(peer.getName()))
+                    .max()
+                    .orElse(0);
+            if (latency < bestLatency) {
+                best = endorsers;
+                bestLatency = latency;
+            }
+        }
+
+        return best;
+    }
+
+    static List<Map<String, Integer>> computeLayouts(ChaincodeEndorsementPolicy endorsementPolicy) {
+        Policies.SignaturePolicyEnvelope envelope;
+        try {
+            envelope = Policies.SignaturePolicyEnvelope.parseFrom(endorsementPolicy.getChaincodeEndorsementPolicyAsBytes());
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn("Cannot parse endorsement policy, proposals will be sent to every peer", e);
+            return Collections.emptyList();
+        }
+
+        List<String> principalMspIds = envelope.getIdentitiesList().stream()
+                .map(EndorserSelector::toMspId)
+                .collect(Collectors.toList());
+
+        List<Map<String, Integer>> layouts = new ArrayList<>();
+        for (Map<Integer, Integer> principals : principalLayouts(envelope.getRule())) {
+            Map<String, Integer> layout = new HashMap<>();
+            boolean resolvable = true;
+            for (Map.Entry<Integer, Integer> principal : principals.entrySet()) {
+                String mspId = principal.getKey() < principalMspIds.size() ? principalMspIds.get(principal.getKey()) : null;
+                if (mspId == null) {
+                    resolvable = false;
+                    break;
+                }
+                layout.merge(mspId, principal.getValue(), Integer::sum);
+            }
+            if (resolvable && !layout.isEmpty() && !layouts.contains(layout)) {
+                layouts.add(layout);
+            }
+        }
+
+        logger.info("Endorsement policy resolved to layouts {}", layouts);
+
+        return layouts;
+    }
+
+    /**
+     * Minimal multisets of principal indexes (index to signature count) satisfying the rule.
+     */
+    private static List<Map<Integer, Integer>> principalLayouts(Policies.SignaturePolicy rule) {
+        switch (rule.getTypeCase()) {
+            case SIGNED_BY:
+                return Collections.singletonList(Collections.singletonMap(rule.getSignedBy(), 1));
+            case N_OUT_OF:
+                List<List<Map<Integer, Integer>>> children = rule.getNOutOf().getRulesList().stream()
+                        .map(EndorserSelector::principalLayouts)
+                        .collect(Collectors.toList());
+                Set<Map<Integer, Integer>> combined = new LinkedHashSet<>();
+                combine(children, rule.getNOutOf().getN(), 0, Collections.emptyMap(), combined);
+
+                return minimal(combined);
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static void combine(List<List<Map<Integer, Integer>>> children, int remaining, int from,
+                                Map<Integer, Integer> current, Set<Map<Integer, Integer>> result) {
+        if (remaining <= 0) {
+            result.add(current);
+            return;
+        }
+
+        for (int i = from; i <= children.size() - remaining; i++) {
+            for (Map<Integer, Integer> childLayout : children.get(i)) {
+                Map<Integer, Integer> merged = new HashMap<>(current);
+                childLayout.forEach((principal, count) -> merged.merge(principal, count, Integer::sum));
+                combine(children, remaining - 1, i + 1, merged, result);
+            }
+        }
+    }
+
+    private static List<Map<Integer, Integer>> minimal(Collection<Map<Integer, Integer>> layouts) {
+        return layouts.stream()
+                .filter(layout -> layouts.stream().noneMatch(other -> !other.equals(layout) && covers(layout, other)))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean covers(Map<Integer, Integer> layout, Map<Integer, Integer> other) {
+        return other.entrySet().stream()
+                .allMatch(required -> layout.getOrDefault(required.getKey(), 0) >= required.getValue());
+    }
+
+    private static String toMspId(MspPrincipal.MSPPrincipal principal) {
+        try {
+            switch (principal.getPrincipalClassification()) {
+                case ROLE:
+                    return MspPrincipal.MSPRole.parseFrom(principal.getPrincipal()).getMspIdentifier();
+                case ORGANIZATION_UNIT:
+                    return MspPrincipal.OrganizationUnit.parseFrom(principal.getPrincipal()).getMspIdentifier();
+                default:
+                    return null;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn("Cannot parse endorsement policy principal", e);
+            return null;
+        }
+    }
+}
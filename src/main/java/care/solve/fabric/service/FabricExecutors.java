@@ -0,0 +1,155 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separate pools for the blocking stages of an invoke: sending proposals to the endorsers,
+ * broadcasting to the orderers and running what follows a commit event, so that a slow orderer
+ * does not starve endorsement of threads and completions are not run on the SDK's event threads.
+ * Queries get a pool of their own as well.
+ *
+ * A pool with {@code virtual-threads} runs each task on a virtual thread when the JVM has them
+ * and falls back to platform threads otherwise. A platform pool starts threads up to its
+ * {@code max-pool-size} before queueing and lets them stop after {@code keep-alive-seconds} idle.
+ * Each pool reports the tasks waiting for a thread and the tasks running under
+ * {@code fabric.executor.<pool>}, and platform pools also report their live threads and the share
+ * of them that is busy.
+ */
+public class FabricExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(FabricExecutors.class);
+
+    private final Stage endorse;
+    private final Stage order;
+    private final Stage commit;
+    private final Stage query;
+
+    public FabricExecutors(HFProperties hfProperties, MetricRegistry metricRegistry) {
+        this(hfProperties.getPools(), metricRegistry);
+    }
+
+    public FabricExecutors(HFProperties.Pools pools, MetricRegistry metricRegistry) {
+        this.endorse = new Stage("endorse", pools.getEndorse(), metricRegistry);
+        this.order = new Stage("order", pools.getOrder(), metricRegistry);
+        this.commit = new Stage("commit", pools.getCommit(), metricRegistry);
+        this.query = new Stage("query", pools.getQuery(), metricRegistry);
+    }
+
+    public Executor endorse() {
+        return endorse;
+    }
+
+    public Executor order() {
+        return order;
+    }
+
+    public Executor commit() {
+        return commit;
+    }
+
+    public Executor query() {
+        return query;
+    }
+
+    public void shutdown() {
+        endorse.shutdown();
+        order.shutdown();
+        commit.shutdown();
+        query.shutdown();
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} where the JVM provides it.
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static class Stage implements Executor {
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final ThreadPoolTaskExecutor pool;
+        private final ExecutorService virtualThreads;
+
+        Stage(String name, HFProperties.Pool poolConf, MetricRegistry metricRegistry) {
+            ExecutorService virtualThreads = poolConf.isVirtualThreads() ? virtualThreadExecutor() : null;
+            if (poolConf.isVirtualThreads() && virtualThreads == null) {
+                logger.warn("Virtual threads are not available on Java {}, the {} pool uses platform threads",
+                        System.getProperty("java.version"), name);
+            }
+            this.virtualThreads = virtualThreads;
+
+            String prefix = MetricRegistry.name("fabric.executor", name);
+            metricRegistry.register(MetricRegistry.name(prefix, "queued"), (Gauge<Integer>) queued::get);
+            metricRegistry.register(MetricRegistry.name(prefix, "active"), (Gauge<Integer>) active::get);
+            if (virtualThreads == null) {
+                this.pool = new ThreadPoolTaskExecutor();
+                pool.setThreadNamePrefix("fabric-" + name + "-");
+                // a ThreadPoolExecutor only grows past its core size once the queue is full, so the core
+                // size is the maximum and idle threads time out instead
+                pool.setCorePoolSize(poolConf.getMaxPoolSize());
+                pool.setMaxPoolSize(poolConf.getMaxPoolSize());
+                pool.setKeepAliveSeconds(poolConf.getKeepAliveSeconds());
+                pool.setAllowCoreThreadTimeOut(true);
+                pool.setQueueCapacity(poolConf.getQueueCapacity());
+                pool.initialize();
+                metricRegistry.register(MetricRegistry.name(prefix, "threads"), (Gauge<Integer>) pool::getPoolSize);
+                metricRegistry.register(MetricRegistry.name(prefix, "utilization"), (Gauge<Double>) () -> {
+                    int threads = pool.getPoolSize();
+                    return threads == 0 ? 0.0 : Math.min(1.0, active.get() / (double) threads);
+                });
+            } else {
+                this.pool = null;
+            }
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            queued.incrementAndGet();
+            Runnable counted = () -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            };
+
+            try {
+                if (pool != null) {
+                    pool.execute(counted);
+                } else {
+                    virtualThreads.execute(counted);
+                }
+            } catch (RejectedExecutionException e) {
+                queued.decrementAndGet();
+                throw e;
+            }
+        }
+
+        void shutdown() {
+            if (pool != null) {
+                pool.shutdown();
+            } else {
+                virtualThreads.shutdown();
+            }
+        }
+    }
+}
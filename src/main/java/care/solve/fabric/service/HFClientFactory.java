@@ -1,65 +1,158 @@
 package care.solve.fabric.service;
 
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.entity.SampleStore;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.hyperledger.fabric.sdk.HFClient;
 import org.hyperledger.fabric.sdk.User;
 import org.hyperledger.fabric.sdk.security.CryptoSuite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 @Component
 public class HFClientFactory {
 
-    private static final Map<String, HFClient> HF_CLIENT_MAP = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(HFClientFactory.class);
+
+    private final Cache<String, HFClient> clients;
+    private final List<BiConsumer<String, HFClient>> evictionListeners = new CopyOnWriteArrayList<>();
 
     private User sampleUser;
+    private SampleStore defaultStore;
+    private CallerIdentityResolver callerIdentityResolver;
+    private String userMspId;
 
     @Autowired
-    public HFClientFactory(@Qualifier("sampleUser") User sampleUser) {
+    public HFClientFactory(@Qualifier("sampleUser") User sampleUser,
+                           SampleStore defaultStore,
+                           CallerIdentityResolver callerIdentityResolver,
+                           HFProperties hfProperties,
+                           MetricRegistry metricRegistry) {
         this.sampleUser = sampleUser;
-    }
+        this.defaultStore = defaultStore;
+        this.callerIdentityResolver = callerIdentityResolver;
+        // the organization UserService enrolls users in
+        this.userMspId = hfProperties.getOrgs().get("clinic").getMspId();
 
+        HFProperties.ClientCache cacheConf = hfProperties.getClientCache();
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumSize(cacheConf.getMaximumSize())
+                .recordStats();
+        if (cacheConf.getExpireAfterAccessMinutes() > 0) {
+            cacheBuilder.expireAfterAccess(cacheConf.getExpireAfterAccessMinutes(), TimeUnit.MINUTES);
+        }
+        this.clients = cacheBuilder
+                .removalListener(this::onRemoval)
+                .build();
 
-//    @Autowired
-//    private SampleStore defaultStore;
-
-//    public HFClient getClient() {
-//        HFClient client;
-//        try {
-//            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-//
-//            if (authentication == null) throw new SessionAuthenticationException("User must be logged in!");
-//
-//            String userName = authentication.getName();
-//
-//            if (HF_CLIENT_MAP.containsKey(userName)) {
-//                return HF_CLIENT_MAP.get(userName);
-//            }
-//
-//            SampleUser user = defaultStore.getMember(userName, UserService.org);
-//            client = HFClient.createNewInstance();
-//            client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
-//            client.setUserContext(user);
-//            HF_CLIENT_MAP.put(userName, client);
-//        } catch (Exception e) {
-//            throw new RuntimeException(e);
-//        }
-//        return client;
-//    }
+        metricRegistry.register("fabric.client.cache.size", (Gauge<Long>) clients::size);
+        metricRegistry.register("fabric.client.cache.hits", (Gauge<Long>) () -> clients.stats().hitCount());
+        metricRegistry.register("fabric.client.cache.misses", (Gauge<Long>) () -> clients.stats().missCount());
+        metricRegistry.register("fabric.client.cache.evictions", (Gauge<Long>) () -> clients.stats().evictionCount());
+    }
 
+    /**
+     * Returns the client of the current caller as resolved by {@link CallerIdentityResolver},
+     * or of the sample user when there is no caller.
+     */
     public HFClient getClient() {
-        HFClient client;
+        String userName = callerIdentityResolver.resolveUserName();
+
+        return userName == null ? getClient(sampleUser) : getClient(userName);
+    }
+
+    /**
+     * Returns the client signing as the given user. Clients are built once per identity, keyed by
+     * MSP id and user name, and shared between threads; the least recently used ones are dropped
+     * when the configured size is exceeded.
+     */
+    public HFClient getClient(User user) {
+        return getClient(toKey(user.getMspId(), user.getName()), () -> enrolled(user));
+    }
+
+    /**
+     * Returns the client of a user enrolled through {@link UserService}. The enrollment is read
+     * from the store only when the client is not cached.
+     *
+     * @throws IllegalArgumentException when the store has no enrollment of the user
+     */
+    public HFClient getClient(String userName) {
+        return getClient(toKey(userMspId, userName), () -> {
+            synchronized (defaultStore) {
+                return enrolled(defaultStore.getMember(userName, UserService.org));
+            }
+        });
+    }
+
+    /**
+     * Registers a callback invoked with the identity key and client whenever a client leaves the cache.
+     */
+    public void addEvictionListener(BiConsumer<String, HFClient> listener) {
+        evictionListeners.add(listener);
+    }
+
+    private HFClient getClient(String key, UserLoader userLoader) {
         try {
-            client = HFClient.createNewInstance();
-            client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
-            client.setUserContext(sampleUser);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return clients.get(key, () -> createClient(userLoader.load()));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
+    /**
+     * The store hands out a blank user for names it does not know, which would only fail once a
+     * proposal it signed reaches a peer.
+     */
+    private static User enrolled(User user) {
+        if (user.getEnrollment() == null || user.getMspId() == null) {
+            throw new IllegalArgumentException("User " + user.getName() + " is not enrolled");
         }
+
+        return user;
+    }
+
+    private HFClient createClient(User user) throws Exception {
+        HFClient client = HFClient.createNewInstance();
+        client.setCryptoSuite(CryptoSuite.Factory.getCryptoSuite());
+        client.setUserContext(user);
+
         return client;
     }
+
+    private void onRemoval(RemovalNotification<String, HFClient> notification) {
+        logger.debug("Client of {} removed from cache: {}", notification.getKey(), notification.getCause());
+        evictionListeners.forEach(listener -> {
+            try {
+                listener.accept(notification.getKey(), notification.getValue());
+            } catch (RuntimeException e) {
+                logger.warn("Client eviction listener failed for {}", notification.getKey(), e);
+            }
+        });
+    }
+
+    private static String toKey(String mspId, String userName) {
+        return mspId + ":" + userName;
+    }
+
+    @FunctionalInterface
+    private interface UserLoader {
+        User load() throws Exception;
+    }
 }
@@ -0,0 +1,115 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs an invoke again, from endorsement on, when its commit is invalidated with one of the
+ * retryable validation codes, by default read conflicts. Attempts are spaced by an exponential
+ * backoff with jitter, so that invokes which conflicted with each other do not collide again.
+ */
+public class InvokeRetrier {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvokeRetrier.class);
+
+    private final HFProperties.Retry retryConf;
+    private final Set<FabricTransaction.TxValidationCode> retryableCodes;
+    private final ScheduledExecutorService fabricScheduler;
+    private final TransactionMetrics transactionMetrics;
+
+    public InvokeRetrier(HFProperties hfProperties, ScheduledExecutorService fabricScheduler, TransactionMetrics transactionMetrics) {
+        this.retryConf = hfProperties.getRetry();
+        this.retryableCodes = retryConf.getRetryableCodes().isEmpty()
+                ? EnumSet.noneOf(FabricTransaction.TxValidationCode.class)
+                : EnumSet.copyOf(retryConf.getRetryableCodes());
+        this.fabricScheduler = fabricScheduler;
+        this.transactionMetrics = transactionMetrics;
+    }
+
+    public <T> CompletableFuture<T> callAsync(String func, Supplier<CompletableFuture<T>> attempt) {
+        return callAsync(func, attempt.get(), attempt);
+    }
+
+    /**
+     * Retries with {@code retry} when {@code firstAttempt}, already under way, fails.
+     */
+    public <T> CompletableFuture<T> callAsync(String func, CompletableFuture<T> firstAttempt, Supplier<CompletableFuture<T>> retry) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        handle(func, firstAttempt, retry, 1, result);
+
+        return result;
+    }
+
+    private <T> void handle(String func, CompletableFuture<T> attempt, Supplier<CompletableFuture<T>> retry, int attemptNumber, CompletableFuture<T> result) {
+        attempt.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else if (!shouldRetry(func, e, attemptNumber)) {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            } else {
+                fabricScheduler.schedule(() -> {
+                    CompletableFuture<T> next;
+                    try {
+                        next = retry.get();
+                    } catch (RuntimeException retryFailure) {
+                        result.completeExceptionally(retryFailure);
+                        return;
+                    }
+                    handle(func, next, retry, attemptNumber + 1, result);
+                }, backoffMillis(attemptNumber), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private boolean shouldRetry(String func, Throwable failure, int attemptNumber) {
+        FabricTransaction.TxValidationCode code = validationCode(failure);
+        if (code == null || !retryableCodes.contains(code)) {
+            return false;
+        }
+
+        transactionMetrics.conflicted(func);
+        if (attemptNumber >= retryConf.getMaxAttempts()) {
+            transactionMetrics.retriesExhausted(func);
+            logger.debug("Giving up {} after {} attempts, last invalidated with {}", func, attemptNumber, code);
+            return false;
+        }
+
+        transactionMetrics.retried(func);
+        return true;
+    }
+
+    /**
+     * Half of the exponential backoff plus a random part up to the other half.
+     */
+    private long backoffMillis(int attemptNumber) {
+        long backoff = Math.min(retryConf.getMaxBackoffMillis(), retryConf.getInitialBackoffMillis() << Math.min(attemptNumber - 1, 20));
+        long half = backoff / 2;
+
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    private static FabricTransaction.TxValidationCode validationCode(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (!(cause instanceof TransactionEventException) || ((TransactionEventException) cause).getTransactionEvent() == null) {
+            return null;
+        }
+
+        return FabricTransaction.TxValidationCode.forNumber(((TransactionEventException) cause).getTransactionEvent().getValidationCode());
+    }
+}
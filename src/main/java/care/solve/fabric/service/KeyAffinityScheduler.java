@@ -0,0 +1,105 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Striped;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Sits in front of {@link TransactionServiceImpl} and holds back an invoke until every invoke in
+ * flight on one of the same ledger keys has committed or failed, so that invokes on a key are
+ * ordered in separate blocks instead of invalidating each other with read conflicts. Invokes on
+ * other keys run in parallel.
+ *
+ * Each key in flight maps to the completion of the last invoke touching it. Keys of an invoke are
+ * registered under the striped locks of all its keys, taken in a fixed order, so two invokes
+ * sharing keys always queue in the same order on each of them.
+ */
+public class KeyAffinityScheduler {
+
+    private final TransactionServiceImpl transactionService;
+    private final Striped<Lock> stripes;
+    private final ConcurrentMap<String, CompletableFuture<Void>> lastInvokes = new ConcurrentHashMap<>();
+    private final Meter deferred;
+
+    public KeyAffinityScheduler(TransactionServiceImpl transactionService, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        this.transactionService = transactionService;
+        this.stripes = Striped.lock(hfProperties.getKeyAffinity().getStripes());
+        this.deferred = metricRegistry.meter("fabric.affinity.deferred");
+        metricRegistry.register("fabric.affinity.keys", (Gauge<Integer>) lastInvokes::size);
+    }
+
+    public byte[] sendInvokeTransaction(Collection<String> keys, String func, String[] args) {
+        Set<String> keySet = new LinkedHashSet<>(keys);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> predecessors = register(keySet, done);
+        try {
+            predecessors.join();
+            return transactionService.sendInvokeTransaction(func, args);
+        } finally {
+            release(keySet, done);
+        }
+    }
+
+    public CompletableFuture<byte[]> sendInvokeTransactionAsync(Collection<String> keys, String func, String[] args) {
+        Set<String> keySet = new LinkedHashSet<>(keys);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> predecessors = register(keySet, done);
+
+        CompletableFuture<byte[]> result;
+        try {
+            result = predecessors.isDone()
+                    ? transactionService.sendInvokeTransactionAsync(func, args)
+                    : transactionService.sendInvokeTransactionAsync(func, args, predecessors);
+        } catch (RuntimeException e) {
+            release(keySet, done);
+            throw e;
+        }
+
+        return result.whenComplete((payload, e) -> release(keySet, done));
+    }
+
+    /**
+     * Makes {@code done} the last invoke of the keys.
+     *
+     * @return completes once the previous invokes on the keys are done
+     */
+    private CompletableFuture<Void> register(Set<String> keys, CompletableFuture<Void> done) {
+        List<CompletableFuture<Void>> predecessors = new ArrayList<>();
+        Iterable<Lock> locks = stripes.bulkGet(keys);
+        locks.forEach(Lock::lock);
+        try {
+            for (String key : keys) {
+                CompletableFuture<Void> previous = lastInvokes.put(key, done);
+                if (previous != null) {
+                    predecessors.add(previous);
+                }
+            }
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+
+        if (predecessors.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        deferred.mark();
+
+        return CompletableFuture.allOf(predecessors.toArray(new CompletableFuture[predecessors.size()]));
+    }
+
+    private void release(Set<String> keys, CompletableFuture<Void> done) {
+        keys.forEach(key -> lastInvokes.remove(key, done));
+        done.complete(null);
+    }
+}
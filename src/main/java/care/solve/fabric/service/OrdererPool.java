@@ -0,0 +1,186 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Orderer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.BaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads broadcasts over all orderers of a channel instead of the first one. Each broadcast
+ * starts at the next orderer in turn with {@code ROUND_ROBIN}, or at the one with the fewest
+ * broadcasts in flight with {@code LEAST_PENDING}, skipping those whose circuit breaker is open.
+ * An orderer that cannot be connected to or answers with a status other than SUCCESS is reported to
+ * its breaker and the same envelope is sent to the next one right away. A broadcast that timed out
+ * is reported but not resent, since the orderer may have accepted it. A resend can still put the
+ * transaction on the ledger twice, when the first orderer accepted the envelope before its
+ * connection broke; the later copy is then invalidated with {@code DUPLICATE_TXID}.
+ *
+ * Orderers are told apart by name, so the counts are shared by the channels reaching the same
+ * orderer. Each one publishes its broadcast latency as {@code fabric.orderer.<name>.broadcast},
+ * its failures and the broadcasts in flight; {@code fabric.orderer.failovers} counts the
+ * broadcasts passed on to another orderer.
+ */
+public class OrdererPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrdererPool.class);
+
+    // the orderer property and default of the SDK's OrdererClient
+    private static final String WAIT_TIME_PROPERTY = "ordererWaitTimeMilliSecs";
+    private static final long DEFAULT_WAIT_TIME_MILLIS = 3000;
+
+    private final CircuitBreakers circuitBreakers;
+    private final HFProperties.Ordering.Strategy strategy;
+    private final MetricRegistry metricRegistry;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Meter failovers;
+
+    public OrdererPool(CircuitBreakers circuitBreakers, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        this.circuitBreakers = circuitBreakers;
+        this.strategy = hfProperties.getOrdering().getStrategy();
+        this.metricRegistry = metricRegistry;
+        this.failovers = metricRegistry.meter("fabric.orderer.failovers");
+    }
+
+    /**
+     * The available orderers in the order to try them.
+     */
+    public List<Orderer> select(Collection<Orderer> orderers) {
+        List<Orderer> available = circuitBreakers.available(orderers, Orderer::getName);
+        List<Orderer> selected = new ArrayList<>(available.size());
+        if (available.isEmpty()) {
+            return selected;
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), available.size());
+        selected.addAll(available.subList(start, available.size()));
+        selected.addAll(available.subList(0, start));
+        if (strategy == HFProperties.Ordering.Strategy.LEAST_PENDING) {
+            // stable, so orderers equally busy keep taking turns
+            selected.sort(Comparator.comparingInt(orderer -> nodeOf(orderer.getName()).pending.get()));
+        }
+
+        return selected;
+    }
+
+    /**
+     * Broadcasts the endorsed transaction to the first orderer of {@link #select} that accepts it.
+     *
+     * @return completes when the transaction is committed, or exceptionally when no orderer
+     * accepted it
+     */
+    public CompletableFuture<BlockEvent.TransactionEvent> broadcast(Channel channel, Collection<ProposalResponse> responses, User user) {
+        List<Orderer> selected = select(channel.getOrderers());
+        if (selected.isEmpty()) {
+            return channel.sendTransaction(responses, user);
+        }
+
+        CompletableFuture<BlockEvent.TransactionEvent> committed = null;
+        for (int i = 0; i < selected.size(); i++) {
+            Orderer orderer = selected.get(i);
+            // the probe slot of a half open orderer is only taken by the one actually tried,
+            // and the last one is tried anyway when nothing was sent yet
+            boolean lastResort = committed == null && i == selected.size() - 1;
+            if (!circuitBreakers.tryAcquireProbe(orderer.getName()) && !lastResort) {
+                continue;
+            }
+            if (committed != null) {
+                failovers.mark();
+            }
+            Node node = nodeOf(orderer.getName());
+            node.pending.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                committed = channel.sendTransaction(responses, Collections.singletonList(orderer), user);
+            } finally {
+                node.pending.decrementAndGet();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (!committed.isCompletedExceptionally()) {
+                node.broadcasts.update(elapsed, TimeUnit.NANOSECONDS);
+                circuitBreakers.recordSuccess(orderer.getName(), elapsed);
+                return committed;
+            }
+            if (failedLocally(committed)) {
+                return committed;
+            }
+            node.failures.mark();
+            circuitBreakers.recordFailure(orderer.getName(), elapsed);
+            if (elapsed >= TimeUnit.MILLISECONDS.toNanos(waitTimeMillis(orderer))) {
+                logger.warn("Orderer {} timed out, the transaction is not resent as it may have been accepted", orderer.getName());
+                return committed;
+            }
+            logger.debug("Orderer {} did not accept the transaction", orderer.getName());
+        }
+
+        return committed;
+    }
+
+    /**
+     * Invalid arguments, signing failures and the like come as SDK or runtime exceptions before
+     * anything is sent. The SDK reports every broadcast failure, whether a rejection, a connection
+     * error or a timeout, with a plain {@link Exception} that carries neither status nor cause.
+     */
+    private static boolean failedLocally(CompletableFuture<BlockEvent.TransactionEvent> committed) {
+        Throwable e = committed.handle((transactionEvent, failure) -> failure).join();
+
+        return e instanceof BaseException || e instanceof RuntimeException;
+    }
+
+    /**
+     * How long the SDK waits for the orderer's answer; only a timeout takes that long.
+     */
+    private static long waitTimeMillis(Orderer orderer) {
+        Properties properties = orderer.getProperties();
+        String waitTime = properties == null ? null : properties.getProperty(WAIT_TIME_PROPERTY);
+        try {
+            return waitTime == null ? DEFAULT_WAIT_TIME_MILLIS : Long.parseLong(waitTime);
+        } catch (NumberFormatException e) {
+            return DEFAULT_WAIT_TIME_MILLIS;
+        }
+    }
+
+    private Node nodeOf(String name) {
+        Node node = nodes.get(name);
+        if (node != null) {
+            return node;
+        }
+
+        return nodes.computeIfAbsent(name, Node::new);
+    }
+
+    private class Node {
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Timer broadcasts;
+        private final Meter failures;
+
+        Node(String name) {
+            String prefix = MetricRegistry.name("fabric.orderer", name);
+            this.broadcasts = metricRegistry.timer(MetricRegistry.name(prefix, "broadcast"));
+            this.failures = metricRegistry.meter(MetricRegistry.name(prefix, "failures"));
+            metricRegistry.register(MetricRegistry.name(prefix, "pending"), (Gauge<Integer>) pending::get);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.entity.QueryPage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.protobuf.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Iterates over the items of a paged query, fetching a page only when the previous one is being
+ * consumed, so at most two pages are held whatever the size of the whole result.
+ *
+ * A page is the JSON object {@code {"items": [...], "bookmark": "..."}}; each item is yielded as
+ * its raw JSON and the bookmark is passed back to fetch the next page.
+ */
+public class PagedQueryIterator implements Iterator<byte[]> {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Function<String, CompletableFuture<ByteString>> fetchPage;
+
+    private Iterator<byte[]> items = Collections.emptyIterator();
+    private CompletableFuture<ByteString> nextPage;
+
+    /**
+     * @param fetchPage fetches the page following a bookmark, the empty bookmark standing for the first page
+     */
+    public PagedQueryIterator(Function<String, CompletableFuture<ByteString>> fetchPage) {
+        this.fetchPage = fetchPage;
+        this.nextPage = fetchPage.apply("");
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!items.hasNext() && nextPage != null) {
+            QueryPage page = parsePage(await(nextPage));
+            // the next page is on its way while this one is consumed
+            nextPage = page.isLast() ? null : fetchPage.apply(page.getBookmark());
+            items = page.getItems().iterator();
+        }
+
+        return items.hasNext();
+    }
+
+    @Override
+    public byte[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return items.next();
+    }
+
+    public static QueryPage parsePage(ByteString payload) {
+        List<byte[]> items = new ArrayList<>();
+        String bookmark = null;
+        try (JsonParser parser = JSON.createParser(payload.newInput())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("A query page must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("items".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        items.add(copyCurrentValue(parser));
+                    }
+                } else if ("bookmark".equals(field)) {
+                    bookmark = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed query page", e);
+        }
+
+        return new QueryPage(items, bookmark);
+    }
+
+    private static byte[] copyCurrentValue(JsonParser parser) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.copyCurrentStructure(parser);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static ByteString await(CompletableFuture<ByteString> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
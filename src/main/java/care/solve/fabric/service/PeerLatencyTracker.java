@@ -0,0 +1,145 @@
+package care.solve.fabric.service;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.SlidingWindowReservoir;
+import org.hyperledger.fabric.sdk.Peer;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Exponentially weighted moving averages of the latency and error rate observed per peer,
+ * plus a p95 over the most recent samples. Peers without observations score zero so that
+ * they get tried first.
+ */
+public class PeerLatencyTracker {
+
+    private static final double ALPHA = 0.2;
+    private static final int WINDOW_SIZE = 256;
+    private static final double MAX_ERROR_RATE = 0.99;
+    private static final long PERCENTILE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentMap<String, PeerStats> stats = new ConcurrentHashMap<>();
+
+    public void recordSuccess(String peerName, long elapsedNanos) {
+        statsOf(peerName).update(elapsedNanos, false);
+    }
+
+    public void recordFailure(String peerName, long elapsedNanos) {
+        statsOf(peerName).update(elapsedNanos, true);
+    }
+
+    /**
+     * An outcome without a latency of the peer's own, which only moves its error rate.
+     */
+    public void recordOutcome(String peerName, boolean failed) {
+        statsOf(peerName).updateErrorRate(failed);
+    }
+
+    /**
+     * Drops what was observed of the peer, e.g. before probing it again after an outage.
+     */
+    public void forget(String peerName) {
+        stats.remove(peerName);
+    }
+
+    public double getLatencyMillis(String peerName) {
+        PeerStats peerStats = stats.get(peerName);
+
+        return peerStats == null ? 0 : peerStats.getLatencyMillis();
+    }
+
+    public double getErrorRate(String peerName) {
+        PeerStats peerStats = stats.get(peerName);
+
+        return peerStats == null ? 0 : peerStats.getErrorRate();
+    }
+
+    /**
+     * Expected latency until a successful response, assuming failed calls get retried.
+     */
+    public double getScore(String peerName) {
+        return getLatencyMillis(peerName) / (1 - Math.min(getErrorRate(peerName), MAX_ERROR_RATE));
+    }
+
+    /**
+     * @return p95 of the recent latencies in milliseconds, or -1 when nothing was recorded yet
+     */
+    public long getP95LatencyMillis(String peerName) {
+        PeerStats peerStats = stats.get(peerName);
+
+        return peerStats == null ? -1 : peerStats.getP95LatencyMillis();
+    }
+
+    public List<Peer> rank(Collection<Peer> peers) {
+        return peers.stream()
+                .sorted(Comparator.comparingDouble(peer -> getScore(peer.getName())))
+                .collect(Collectors.toList());
+    }
+
+    private PeerStats statsOf(String peerName) {
+        return stats.computeIfAbsent(peerName, name -> new PeerStats());
+    }
+
+    private static class PeerStats {
+        private final Histogram window = new Histogram(new SlidingWindowReservoir(WINDOW_SIZE));
+
+        private double latencyMillis;
+        private double errorRate;
+        private boolean hasLatency;
+        private boolean hasOutcome;
+
+        private volatile long p95LatencyMillis = -1;
+        private volatile long p95ComputedAt;
+
+        void update(long elapsedNanos, boolean failed) {
+            double sample = elapsedNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+            synchronized (this) {
+                if (hasLatency) {
+                    latencyMillis += ALPHA * (sample - latencyMillis);
+                } else {
+                    latencyMillis = sample;
+                    hasLatency = true;
+                }
+                updateErrorRate(failed);
+            }
+            if (!failed) {
+                window.update(elapsedNanos);
+            }
+        }
+
+        synchronized void updateErrorRate(boolean failed) {
+            if (hasOutcome) {
+                errorRate += ALPHA * ((failed ? 1 : 0) - errorRate);
+            } else {
+                errorRate = failed ? 1 : 0;
+                hasOutcome = true;
+            }
+        }
+
+        synchronized double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        long getP95LatencyMillis() {
+            long now = System.nanoTime();
+            if (p95LatencyMillis < 0 || now - p95ComputedAt > PERCENTILE_REFRESH_NANOS) {
+                if (window.getCount() > 0) {
+                    p95LatencyMillis = TimeUnit.NANOSECONDS.toMillis((long) window.getSnapshot().get95thPercentile());
+                }
+                p95ComputedAt = now;
+            }
+
+            return p95LatencyMillis;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.protobuf.ByteString;
+import lombok.Data;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Optional cache of query results for the functions listed in {@code fabric.query-cache}.
+ *
+ * Results of {@code functions} are valid until the channel block height advances. Results of
+ * {@code key-addressed-functions}, whose first argument is the ledger key they read, stay valid
+ * until a committed block writes that key in the chaincode namespace.
+ *
+ * Every written ledger key bumps a write version, striped by key hash. A key-addressed result
+ * is cached with the version seen when its query started, registered for invalidation before it
+ * is stored and dropped when the version moved meanwhile, and a hit is only served while the
+ * version is unchanged, so a block committed while a query runs cannot leave a stale entry.
+ * The queried peer may not have committed a block the event hub already delivered, so results
+ * of queries started within {@code max-peer-lag-millis} of a block, or for key-addressed
+ * functions of a write to their key, are not cached.
+ */
+public class QueryResultCache implements BlockListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+    private static final int WRITE_STRIPES = 4096;
+
+    private final boolean enabled;
+    private final Set<String> heightFunctions;
+    private final Set<String> keyAddressedFunctions;
+
+    private final Cache<Key, Entry> results;
+    private final ConcurrentMap<String, Set<Key>> keysByLedgerKey = new ConcurrentHashMap<>();
+    private final AtomicLong blockHeight = new AtomicLong();
+    private final AtomicLong lastBlockNanos = new AtomicLong();
+    private final AtomicLongArray writeVersions = new AtomicLongArray(WRITE_STRIPES);
+    private final AtomicLongArray lastWriteNanos = new AtomicLongArray(WRITE_STRIPES);
+    private final long maxPeerLagNanos;
+
+    private final Meter invalidations;
+
+    public QueryResultCache(HFProperties hfProperties, MetricRegistry metricRegistry) {
+        HFProperties.QueryCache cacheConf = hfProperties.getQueryCache();
+        this.enabled = cacheConf.isEnabled();
+        this.heightFunctions = new HashSet<>(cacheConf.getFunctions());
+        this.keyAddressedFunctions = new HashSet<>(cacheConf.getKeyAddressedFunctions());
+        this.maxPeerLagNanos = TimeUnit.MILLISECONDS.toNanos(cacheConf.getMaxPeerLagMillis());
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(cacheConf.getMaximumSize())
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
+
+        this.invalidations = metricRegistry.meter("fabric.query.cache.invalidations");
+        metricRegistry.register("fabric.query.cache.size", (Gauge<Long>) results::size);
+        metricRegistry.register("fabric.query.cache.hits", (Gauge<Long>) () -> results.stats().hitCount());
+        metricRegistry.register("fabric.query.cache.misses", (Gauge<Long>) () -> results.stats().missCount());
+        metricRegistry.register("fabric.query.cache.evictions", (Gauge<Long>) () -> results.stats().evictionCount());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isCacheable(String func) {
+        return enabled && (heightFunctions.contains(func) || isKeyAddressed(func));
+    }
+
+    /**
+     * Returns the cached result, or runs the loader and caches its result when no block was
+     * committed while it was running or, for key-addressed functions, none wrote the key.
+     */
+    public CompletableFuture<ByteString> get(ChaincodeID chaincodeID, String func, byte[][] args, Supplier<CompletableFuture<ByteString>> loader) {
+        if (!isCacheable(func)) {
+            return loader.get();
+        }
+
+        Key key = new Key(chaincodeID.getName(), chaincodeID.getVersion(), func, Arrays.stream(args).map(ByteString::copyFrom).collect(Collectors.toList()));
+        boolean keyAddressed = isKeyAddressed(key);
+        int stripe = keyAddressed ? stripeOf(key.getLedgerKey()) : -1;
+        long height = blockHeight.get();
+        long version = keyAddressed ? writeVersions.get(stripe) : 0;
+        Entry entry = results.getIfPresent(key);
+        if (entry != null && (keyAddressed ? entry.getWriteVersion() == version : entry.getBlockHeight() == height)) {
+            return CompletableFuture.completedFuture(entry.getPayload());
+        }
+        long lastChangeNanos = keyAddressed ? lastWriteNanos.get(stripe) : lastBlockNanos.get();
+        boolean peerMayLag = lastChangeNanos != 0 && System.nanoTime() - lastChangeNanos < maxPeerLagNanos;
+
+        return loader.get().thenApply(payload -> {
+            if (payload == null || peerMayLag) {
+                return payload;
+            }
+            if (keyAddressed) {
+                putKeyAddressed(key, new Entry(payload, height, version), stripe);
+            } else if (blockHeight.get() == height) {
+                results.put(key, new Entry(payload, height, 0));
+            }
+
+            return payload;
+        });
+    }
+
+    public void invalidateAll() {
+        results.invalidateAll();
+        invalidations.mark();
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        // set before the height moves, so a query that reads the new height sees it
+        lastBlockNanos.set(System.nanoTime());
+        if (keyAddressedFunctions.isEmpty()) {
+            blockHeight.accumulateAndGet(blockEvent.getBlockNumber() + 1, Math::max);
+            return;
+        }
+
+        try {
+            BlockWrites.forEach(blockEvent, (namespace, write) -> {
+                String ledgerKey = namespace + "/" + write.getKey();
+                // bumped before the registered results are looked up, see putKeyAddressed
+                int stripe = stripeOf(ledgerKey);
+                lastWriteNanos.set(stripe, System.nanoTime());
+                writeVersions.incrementAndGet(stripe);
+                Set<Key> keys = keysByLedgerKey.get(ledgerKey);
+                if (keys != null) {
+                    results.invalidateAll(keys);
+                    invalidations.mark();
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Cannot read writes of block {}, dropping cached query results", blockEvent.getBlockNumber(), e);
+            for (int stripe = 0; stripe < WRITE_STRIPES; stripe++) {
+                lastWriteNanos.set(stripe, System.nanoTime());
+                writeVersions.incrementAndGet(stripe);
+            }
+            invalidateAll();
+        } finally {
+            blockHeight.accumulateAndGet(blockEvent.getBlockNumber() + 1, Math::max);
+        }
+    }
+
+    private boolean isKeyAddressed(String func) {
+        return keyAddressedFunctions.contains(func);
+    }
+
+    private boolean isKeyAddressed(Key key) {
+        return isKeyAddressed(key.getFunc()) && !key.getArgs().isEmpty();
+    }
+
+    /**
+     * Registers the entry before storing it and checks the write version after: a write bumped
+     * before the check drops it here, one bumped after finds it registered and invalidates it.
+     */
+    private void putKeyAddressed(Key key, Entry entry, int stripe) {
+        if (writeVersions.get(stripe) != entry.getWriteVersion()) {
+            return;
+        }
+        keysByLedgerKey.computeIfAbsent(key.getLedgerKey(), ledgerKey -> ConcurrentHashMap.newKeySet()).add(key);
+        results.put(key, entry);
+        if (writeVersions.get(stripe) != entry.getWriteVersion()) {
+            results.invalidate(key);
+        }
+    }
+
+    private static int stripeOf(String ledgerKey) {
+        return (ledgerKey.hashCode() & Integer.MAX_VALUE) % WRITE_STRIPES;
+    }
+
+    private void onRemoval(RemovalNotification<Key, Entry> notification) {
+        Key key = notification.getKey();
+        if (key == null || notification.getCause() == RemovalCause.REPLACED || !isKeyAddressed(key)) {
+            return;
+        }
+
+        keysByLedgerKey.computeIfPresent(key.getLedgerKey(), (ledgerKey, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    @Data
+    private static class Key {
+        private final String chaincodeName;
+        private final String chaincodeVersion;
+        private final String func;
+        private final List<ByteString> args;
+
+        String getLedgerKey() {
+            return chaincodeName + "/" + args.get(0).toStringUtf8();
+        }
+    }
+
+    @Data
+    private static class Entry {
+        private final ByteString payload;
+        private final long blockHeight;
+        private final long writeVersion;
+    }
+}
@@ -0,0 +1,128 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import org.hyperledger.fabric.sdk.Peer;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Sends a read to the single best scored peer. When that peer has not answered within its p95
+ * latency, or has failed, the same read is sent to the second best peer and whichever answers
+ * successfully first wins. An error status from the chaincode is the answer and is not retried
+ * elsewhere. Peers whose circuit breaker is open are not asked.
+ */
+public class QueryRouter {
+
+    private final PeerLatencyTracker peerLatencyTracker;
+    private final CircuitBreakers circuitBreakers;
+    private final Executor queryExecutor;
+    private final ScheduledExecutorService fabricScheduler;
+    private final HFProperties.Query queryConf;
+
+    public QueryRouter(PeerLatencyTracker peerLatencyTracker,
+                       CircuitBreakers circuitBreakers,
+                       Executor queryExecutor,
+                       ScheduledExecutorService fabricScheduler,
+                       HFProperties hfProperties) {
+        this.peerLatencyTracker = peerLatencyTracker;
+        this.circuitBreakers = circuitBreakers;
+        this.queryExecutor = queryExecutor;
+        this.fabricScheduler = fabricScheduler;
+        this.queryConf = hfProperties.getQuery();
+    }
+
+    /**
+     * @return the first successful answer, or a failed future when there is no peer to ask
+     */
+    public <T> CompletableFuture<T> route(Collection<Peer> peers, Function<Peer, T> attempt) {
+        List<Peer> ranked = peerLatencyTracker.rank(circuitBreakers.availablePeers(peers));
+        if (ranked.isEmpty()) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new NoSuchElementException("No peer to send the query to"));
+            return failed;
+        }
+        // the probe slot of a half open peer is only taken by the peer actually asked
+        Iterator<Peer> candidates = ranked.iterator();
+        Peer primary = nextAcquired(candidates);
+        if (primary == null) {
+            primary = ranked.get(0);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean hedged = new AtomicBoolean(!candidates.hasNext() || !queryConf.isHedge());
+
+        Runnable hedge = () -> {
+            if (!result.isDone() && hedged.compareAndSet(false, true)) {
+                Peer secondary = nextAcquired(candidates);
+                if (secondary != null) {
+                    pending.incrementAndGet();
+                    submit(secondary, attempt, result, pending, () -> { });
+                }
+            }
+        };
+
+        submit(primary, attempt, result, pending, hedge);
+        if (!hedged.get()) {
+            ScheduledFuture<?> scheduledHedge = fabricScheduler.schedule(hedge, hedgeDelayMillis(primary), TimeUnit.MILLISECONDS);
+            result.whenComplete((value, e) -> scheduledHedge.cancel(false));
+        }
+
+        return result;
+    }
+
+    private <T> void submit(Peer peer, Function<Peer, T> attempt, CompletableFuture<T> result, AtomicInteger pending, Runnable onFailure) {
+        long start = System.nanoTime();
+        CompletableFuture.supplyAsync(() -> attempt.apply(peer), queryExecutor).whenComplete((value, e) -> {
+            long elapsed = System.nanoTime() - start;
+            if (e == null) {
+                circuitBreakers.recordSuccess(peer.getName(), elapsed);
+                result.complete(value);
+                return;
+            }
+            if (e.getCause() instanceof ChaincodeResponseException) {
+                // another peer would run the same chaincode on the same state
+                circuitBreakers.recordSuccess(peer.getName(), elapsed);
+                result.completeExceptionally(e.getCause());
+                return;
+            }
+
+            circuitBreakers.recordFailure(peer.getName(), elapsed);
+            onFailure.run();
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    private Peer nextAcquired(Iterator<Peer> candidates) {
+        while (candidates.hasNext()) {
+            Peer peer = candidates.next();
+            if (circuitBreakers.tryAcquireProbe(peer.getName())) {
+                return peer;
+            }
+        }
+
+        return null;
+    }
+
+    private long hedgeDelayMillis(Peer peer) {
+        long p95 = peerLatencyTracker.getP95LatencyMillis(peer.getName());
+        if (p95 < 0) {
+            return queryConf.getDefaultHedgeDelayMillis();
+        }
+
+        return Math.max(p95, queryConf.getMinHedgeDelayMillis());
+    }
+}
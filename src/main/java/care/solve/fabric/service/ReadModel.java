@@ -0,0 +1,317 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Local copy of the world state of the chaincodes in {@code fabric.read-model.chaincodes}, by
+ * default the one transactions are sent to, kept up to date from the write sets of the committed
+ * blocks, so that reads of ledger keys do not go to the peers at all.
+ *
+ * Blocks are applied whole and in order, as the {@link BlockReplayer} delivers them, including the
+ * ones committed while the application was down. Reads may ask for a minimum block height, such
+ * as the block that committed the caller's own invoke, and wait up to {@code max-wait-millis} for
+ * the model to reach it.
+ *
+ * With a {@code store-file} the applied writes are appended to it and read back on start, so the
+ * model resumes from the block it had reached; the file is compacted to the current state then.
+ */
+public class ReadModel implements BlockConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadModel.class);
+
+    private final List<String> chaincodes;
+    private final Supplier<String> defaultChaincode;
+    private final long maxWaitMillis;
+    private final File storeFile;
+
+    private final Map<String, NavigableMap<String, ByteString>> state = new HashMap<>();
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final ReentrantLock heightLock = new ReentrantLock();
+    private final Condition heightAdvanced = heightLock.newCondition();
+    // volatile for the readers, written under both locks
+    private volatile long height;
+    private DataOutputStream store;
+
+    private final Meter reads;
+    private final Meter staleReads;
+
+    public ReadModel(Supplier<String> defaultChaincode, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        HFProperties.ReadModel readModelConf = hfProperties.getReadModel();
+        this.chaincodes = new ArrayList<>(readModelConf.getChaincodes());
+        this.defaultChaincode = defaultChaincode;
+        this.maxWaitMillis = readModelConf.getMaxWaitMillis();
+        this.storeFile = readModelConf.getStoreFile() == null ? null : new File(readModelConf.getStoreFile());
+        if (storeFile != null) {
+            load();
+        }
+
+        this.reads = metricRegistry.meter("fabric.readmodel.reads");
+        this.staleReads = metricRegistry.meter("fabric.readmodel.stale");
+        metricRegistry.register("fabric.readmodel.height", (Gauge<Long>) this::getHeight);
+        metricRegistry.register("fabric.readmodel.keys", (Gauge<Integer>) this::size);
+    }
+
+    /**
+     * @return the number of the next block to apply
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getNextBlock() {
+        return height;
+    }
+
+    /**
+     * The value of the key in the first configured chaincode.
+     */
+    public ByteString get(String key) {
+        return get(chaincodes.isEmpty() ? defaultChaincode.get() : chaincodes.get(0), key, 0);
+    }
+
+    /**
+     * @return the value of the key once at least {@code minHeight} blocks are applied, null when
+     * the key is not set
+     */
+    public ByteString get(String namespace, String key, long minHeight) {
+        awaitHeight(minHeight);
+        reads.mark();
+        stateLock.readLock().lock();
+        try {
+            return namespace(namespace).get(key);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return up to {@code limit} entries from {@code startKey} inclusive to {@code endKey}
+     * exclusive, in key order, once at least {@code minHeight} blocks are applied
+     */
+    public Map<String, ByteString> getRange(String namespace, String startKey, String endKey, int limit, long minHeight) {
+        awaitHeight(minHeight);
+        reads.mark();
+        stateLock.readLock().lock();
+        try {
+            Map<String, ByteString> range = new LinkedHashMap<>();
+            for (Map.Entry<String, ByteString> entry : namespace(namespace).subMap(startKey, endKey).entrySet()) {
+                if (range.size() == limit) {
+                    break;
+                }
+                range.put(entry.getKey(), entry.getValue());
+            }
+
+            return range;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private NavigableMap<String, ByteString> namespace(String namespace) {
+        if (!chaincodes.isEmpty() && !chaincodes.contains(namespace)) {
+            throw new IllegalArgumentException(String.format("Chaincode %s is not in the read model, only %s", namespace, chaincodes));
+        }
+
+        return state.getOrDefault(namespace, Collections.emptyNavigableMap());
+    }
+
+    private int size() {
+        stateLock.readLock().lock();
+        try {
+            return state.values().stream().mapToInt(Map::size).sum();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private void awaitHeight(long minHeight) {
+        if (height >= minHeight) {
+            return;
+        }
+
+        heightLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            while (height < minHeight) {
+                if (remaining <= 0) {
+                    staleReads.mark();
+                    throw new RuntimeException(String.format("Read model at height %d did not reach %d within %d ms", height, minHeight, maxWaitMillis));
+                }
+                remaining = heightAdvanced.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            heightLock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void accept(BlockInfo blockInfo) {
+        Collection<String> tracked = chaincodes.isEmpty() ? Collections.singleton(defaultChaincode.get()) : chaincodes;
+        List<Write> writes = new ArrayList<>();
+        BlockWrites.forEach(blockInfo, (namespace, write) -> {
+            if (tracked.contains(namespace)) {
+                writes.add(new Write(namespace, write.getKey(), write.getIsDelete() ? null : write.getValue()));
+            }
+        });
+
+        long number = blockInfo.getBlockNumber();
+        if (store != null) {
+            append(number, writes);
+        }
+        stateLock.writeLock().lock();
+        heightLock.lock();
+        try {
+            writes.forEach(this::put);
+            height = number + 1;
+            heightAdvanced.signalAll();
+        } finally {
+            heightLock.unlock();
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    private void put(Write write) {
+        NavigableMap<String, ByteString> values = state.computeIfAbsent(write.namespace, namespace -> new TreeMap<>());
+        if (write.value == null) {
+            values.remove(write.key);
+        } else {
+            values.put(write.key, write.value);
+        }
+    }
+
+    /**
+     * Replays the store file, stopping at a record cut short by a crash, and rewrites it as one
+     * record of the resulting state.
+     */
+    private void load() {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            while (true) {
+                long number = input.readLong();
+                List<Write> writes = readWrites(input);
+                writes.forEach(this::put);
+                height = number + 1;
+            }
+        } catch (FileNotFoundException e) {
+            logger.info("No read model store at {}, starting empty", storeFile);
+        } catch (EOFException e) {
+            logger.info("Read model resumes from block {} of {}", height, storeFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        List<Write> snapshot = new ArrayList<>();
+        state.forEach((namespace, values) -> values.forEach((key, value) -> snapshot.add(new Write(namespace, key, value))));
+        File compacted = new File(storeFile.getPath() + ".tmp");
+        try {
+            store = open(compacted);
+            if (height > 0) {
+                append(height - 1, snapshot);
+            }
+            store.close();
+            Files.move(compacted.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            store = open(storeFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private static List<Write> readWrites(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        List<Write> writes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String namespace = input.readUTF();
+            String key = input.readUTF();
+            int length = input.readInt();
+            ByteString value = null;
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                value = ByteString.copyFrom(bytes);
+            }
+            writes.add(new Write(namespace, key, value));
+        }
+
+        return writes;
+    }
+
+    private void append(long number, List<Write> writes) {
+        try {
+            store.writeLong(number);
+            store.writeInt(writes.size());
+            for (Write write : writes) {
+                store.writeUTF(write.namespace);
+                store.writeUTF(write.key);
+                if (write.value == null) {
+                    store.writeInt(-1);
+                } else {
+                    store.writeInt(write.value.size());
+                    write.value.writeTo(store);
+                }
+            }
+            store.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot store block %d of the read model in %s", number, storeFile), e);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private static class Write {
+        private final String namespace;
+        private final String key;
+        private final ByteString value;
+
+        Write(String namespace, String key, ByteString value) {
+            this.namespace = namespace;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.entity.RebalancePlan;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the data of one chaincode over the channels in {@code fabric.sharding.channels}, all of
+ * them in {@link ChannelRegistry} and running the same chaincode, so that writes are ordered and
+ * validated by several channels instead of one. A partition key, such as a patient id, picks the
+ * channel through a consistent hash ring, so every call for the key goes to the same channel and
+ * adding a channel moves only a share of the keys; {@link #planRebalance} lists which.
+ *
+ * Queries that span partitions go to every channel at once and their results are merged as they
+ * arrive. Each channel counts the calls routed to it under {@code fabric.shard.<channel>.routed}.
+ */
+public class ShardRouter {
+
+    private final ChannelRegistry channelRegistry;
+    private final int virtualNodes;
+    private final ConsistentHashRing ring;
+    private final Map<String, Meter> routed = new LinkedHashMap<>();
+    private final Timer fanOuts;
+
+    public ShardRouter(ChannelRegistry channelRegistry, HFProperties hfProperties, MetricRegistry metricRegistry) {
+        this.channelRegistry = channelRegistry;
+        this.virtualNodes = hfProperties.getSharding().getVirtualNodes();
+
+        List<String> channels = hfProperties.getSharding().getChannels().isEmpty()
+                ? new ArrayList<>(channelRegistry.getChannelNames())
+                : hfProperties.getSharding().getChannels();
+        for (String channel : channels) {
+            if (!channelRegistry.getChannelNames().contains(channel)) {
+                throw new IllegalArgumentException(String.format("Shard channel %s is not configured, only %s", channel, channelRegistry.getChannelNames()));
+            }
+            routed.put(channel, metricRegistry.meter(MetricRegistry.name("fabric.shard", channel, "routed")));
+        }
+        this.ring = new ConsistentHashRing(channels, virtualNodes);
+        this.fanOuts = metricRegistry.timer("fabric.shard.fan-outs");
+    }
+
+    public List<String> getChannels() {
+        return ring.getShards();
+    }
+
+    public String channelOf(String partitionKey) {
+        return ring.shardOf(partitionKey);
+    }
+
+    /**
+     * @return the service of the channel holding the partition
+     */
+    public TransactionService forKey(String partitionKey) {
+        String channel = channelOf(partitionKey);
+        routed.get(channel).mark();
+
+        return channelRegistry.getTransactionService(channel);
+    }
+
+    public byte[] sendQueryTransaction(String partitionKey, String func, String[] args) {
+        return forKey(partitionKey).sendQueryTransaction(func, args);
+    }
+
+    public CompletableFuture<byte[]> sendQueryTransactionAsync(String partitionKey, String func, String[] args) {
+        return forKey(partitionKey).sendQueryTransactionAsync(func, args);
+    }
+
+    public byte[] sendInvokeTransaction(String partitionKey, String func, String[] args) {
+        return forKey(partitionKey).sendInvokeTransaction(func, args);
+    }
+
+    public CompletableFuture<byte[]> sendInvokeTransactionAsync(String partitionKey, String func, String[] args) {
+        return forKey(partitionKey).sendInvokeTransactionAsync(func, args);
+    }
+
+    public <T, R> R sendInvokeTransaction(String partitionKey, String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        return forKey(partitionKey).sendInvokeTransaction(func, request, requestCodec, resultCodec);
+    }
+
+    public <T, R> CompletableFuture<R> sendInvokeTransactionAsync(String partitionKey, String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        return forKey(partitionKey).sendInvokeTransactionAsync(func, request, requestCodec, resultCodec);
+    }
+
+    /**
+     * Runs the query on every channel in parallel.
+     *
+     * @return the payload of each channel, in the order of {@link #getChannels()}
+     */
+    public CompletableFuture<Map<String, byte[]>> sendQueryToAllShardsAsync(String func, String[] args) {
+        Timer.Context timer = fanOuts.time();
+        Map<String, CompletableFuture<byte[]>> results = new LinkedHashMap<>();
+        for (String channel : getChannels()) {
+            results.put(channel, channelRegistry.getTransactionService(channel).sendQueryTransactionAsync(func, args));
+        }
+
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture[results.size()]))
+                .thenApply(done -> {
+                    Map<String, byte[]> payloads = new LinkedHashMap<>();
+                    results.forEach((channel, result) -> payloads.put(channel, result.join()));
+                    return payloads;
+                })
+                .whenComplete((payloads, e) -> timer.stop());
+    }
+
+    /**
+     * Runs the query on every channel in parallel and folds the decoded results with
+     * {@code merge} as they come in; the merge must not depend on the order of its arguments. The
+     * first failure fails the whole query.
+     */
+    public <T, R> CompletableFuture<R> sendQueryToAllShardsAsync(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec,
+                                                                 BinaryOperator<R> merge) {
+        Timer.Context timer = fanOuts.time();
+        List<CompletableFuture<R>> results = getChannels().stream()
+                .map(channel -> channelRegistry.getTransactionService(channel).sendQueryTransactionAsync(func, request, requestCodec, resultCodec))
+                .collect(Collectors.toList());
+
+        Fold<R> fold = new Fold<>(results.size(), merge);
+        results.forEach(result -> result.whenComplete(fold::add));
+
+        return fold.merged.whenComplete((result, e) -> timer.stop());
+    }
+
+    public <T, R> R sendQueryToAllShards(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec, BinaryOperator<R> merge) {
+        return sendQueryToAllShardsAsync(func, request, requestCodec, resultCodec, merge).join();
+    }
+
+    /**
+     * Lists the keys that would change channel if the shards were {@code targetChannels}, which
+     * need not be configured yet.
+     */
+    public RebalancePlan planRebalance(Collection<String> targetChannels, Iterable<String> partitionKeys) {
+        ConsistentHashRing target = new ConsistentHashRing(targetChannels, virtualNodes);
+        List<RebalancePlan.Move> moves = new ArrayList<>();
+        int keyCount = 0;
+        for (String key : partitionKeys) {
+            keyCount++;
+            String from = ring.shardOf(key);
+            String to = target.shardOf(key);
+            if (!from.equals(to)) {
+                moves.add(new RebalancePlan.Move(key, from, to));
+            }
+        }
+
+        return new RebalancePlan(getChannels(), new ArrayList<>(targetChannels), keyCount, moves);
+    }
+
+    /**
+     * Merges results in the order they complete; the merged future is completed outside the lock.
+     */
+    private static class Fold<R> {
+
+        private final CompletableFuture<R> merged = new CompletableFuture<>();
+        private final BinaryOperator<R> merge;
+
+        private int pending;
+        private R accumulated;
+        private boolean first = true;
+        private boolean done;
+
+        Fold(int pending, BinaryOperator<R> merge) {
+            this.pending = pending;
+            this.merge = merge;
+        }
+
+        void add(R result, Throwable e) {
+            Throwable failure = e;
+            R complete;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        accumulated = first ? result : merge.apply(accumulated, result);
+                        first = false;
+                    } catch (RuntimeException mergeFailure) {
+                        failure = mergeFailure;
+                    }
+                }
+                if (failure == null && --pending > 0) {
+                    return;
+                }
+                done = true;
+                complete = accumulated;
+            }
+
+            if (failure != null) {
+                merged.completeExceptionally(failure);
+            } else {
+                merged.complete(complete);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package care.solve.fabric.service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the endorsement, ordering and commit phases of transactions, kept overall, per
+ * chaincode function and per peer, plus counters of failed endorsements and queries, timeouts,
+ * read conflicts, retries and transactions in flight. Everything lives in the shared
+ * {@link MetricRegistry}, which the actuator {@code /metrics} endpoint publishes when actuator is
+ * on the classpath.
+ */
+public class TransactionMetrics {
+
+    private static final String PREFIX = "fabric.tx";
+    private static final String PEER_PREFIX = "fabric.peer";
+
+    private final MetricRegistry metricRegistry;
+
+    private final Counter inFlight;
+    private final Meter failedEndorsements;
+    private final Meter failedOrderings;
+    private final Meter failedQueries;
+    private final Meter timeouts;
+    private final Meter conflicts;
+    private final Meter retries;
+
+    public TransactionMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        this.inFlight = metricRegistry.counter(MetricRegistry.name(PREFIX, "inflight"));
+        this.failedEndorsements = metricRegistry.meter(MetricRegistry.name(PREFIX, "endorse", "failures"));
+        this.failedOrderings = metricRegistry.meter(MetricRegistry.name(PREFIX, "order", "failures"));
+        this.failedQueries = metricRegistry.meter(MetricRegistry.name(PREFIX, "query", "failures"));
+        this.timeouts = metricRegistry.meter(MetricRegistry.name(PREFIX, "timeouts"));
+        this.conflicts = metricRegistry.meter(MetricRegistry.name(PREFIX, "commit", "conflicts"));
+        this.retries = metricRegistry.meter(MetricRegistry.name(PREFIX, "retries"));
+    }
+
+    public void started() {
+        inFlight.inc();
+    }
+
+    public void finished() {
+        inFlight.dec();
+    }
+
+    /**
+     * The SDK sends a proposal to all its endorsers together and returns once the slowest has
+     * answered, so the time goes to the peer timer only when there was a single endorser.
+     */
+    public void endorsed(String func, Collection<ProposalResponse> responses, long elapsedNanos) {
+        update(elapsedNanos, PREFIX, "endorse");
+        update(elapsedNanos, PREFIX, "endorse", func);
+        for (ProposalResponse response : responses) {
+            if (responses.size() == 1) {
+                update(elapsedNanos, PEER_PREFIX, response.getPeer().getName(), "endorse");
+            }
+            if (response.getStatus() != ProposalResponse.Status.SUCCESS) {
+                failedEndorsements.mark();
+                metricRegistry.meter(MetricRegistry.name(PREFIX, "endorse", func, "failures")).mark();
+                if (isTimeout(response)) {
+                    timeouts.mark();
+                }
+            }
+        }
+    }
+
+    public void ordered(String func, long elapsedNanos) {
+        update(elapsedNanos, PREFIX, "order");
+        update(elapsedNanos, PREFIX, "order", func);
+    }
+
+    public void orderingFailed() {
+        failedOrderings.mark();
+    }
+
+    public void committed(String func, long elapsedNanos) {
+        update(elapsedNanos, PREFIX, "commit");
+        update(elapsedNanos, PREFIX, "commit", func);
+    }
+
+    /**
+     * A commit invalidated with a retryable validation code, such as a read conflict.
+     */
+    public void conflicted(String func) {
+        conflicts.mark();
+        metricRegistry.meter(MetricRegistry.name(PREFIX, "commit", func, "conflicts")).mark();
+    }
+
+    public void retried(String func) {
+        retries.mark();
+        metricRegistry.meter(MetricRegistry.name(PREFIX, "retries", func)).mark();
+    }
+
+    public void retriesExhausted(String func) {
+        metricRegistry.meter(MetricRegistry.name(PREFIX, "retries", func, "exhausted")).mark();
+    }
+
+    public void queried(String func, ProposalResponse response, long elapsedNanos) {
+        update(elapsedNanos, PREFIX, "query");
+        update(elapsedNanos, PREFIX, "query", func);
+        update(elapsedNanos, PEER_PREFIX, response.getPeer().getName(), "query");
+        if (isTimeout(response)) {
+            timeouts.mark();
+        }
+    }
+
+    public void queryFailed(String func) {
+        failedQueries.mark();
+        metricRegistry.meter(MetricRegistry.name(PREFIX, "query", func, "failures")).mark();
+    }
+
+    private void update(long elapsedNanos, String name, String... names) {
+        metricRegistry.timer(MetricRegistry.name(name, names)).update(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static boolean isTimeout(ProposalResponse response) {
+        // the SDK reports an expired proposal wait time as a response without peer payload
+        return response.getProposalResponse() == null
+                && response.getMessage() != null
+                && response.getMessage().contains("timeout");
+    }
+}
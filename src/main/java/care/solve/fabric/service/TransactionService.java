@@ -1,8 +1,79 @@
 package care.solve.fabric.service;
 
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.entity.BatchResult;
+import care.solve.fabric.entity.InvokeRequest;
+import com.google.protobuf.ByteString;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface TransactionService {
 
     byte[] sendQueryTransaction(String func, String[] args);
     byte[] sendInvokeTransaction(String func, String[] args);
 
+    /**
+     * Same as {@link #sendQueryTransaction(String, String[])} but runs on the fabric executor instead of the caller thread.
+     */
+    CompletableFuture<byte[]> sendQueryTransactionAsync(String func, String[] args);
+
+    /**
+     * Pages through the results of a chaincode function that takes {@code args} followed by a page
+     * size and the bookmark of the previous page, empty for the first one, and returns
+     * {@code {"items": [...], "bookmark": "..."}}. Items are yielded lazily as raw JSON, fetching a
+     * page ahead; a failed page is thrown from {@link Iterator#hasNext()}.
+     */
+    Iterator<byte[]> sendPagedQueryTransaction(String func, String[] args, int pageSize);
+
+    /**
+     * Same as {@link #sendPagedQueryTransaction(String, String[], int)} with the configured {@code fabric.query.page-size}.
+     */
+    Iterator<byte[]> sendPagedQueryTransaction(String func, String[] args);
+
+    /**
+     * Endorses, orders and waits for the commit of the transaction as chained stages on the fabric executor.
+     * The returned future completes with the proposal response payload once the block is committed.
+     */
+    CompletableFuture<byte[]> sendInvokeTransactionAsync(String func, String[] args);
+
+    /**
+     * Same as {@link #sendQueryTransaction(String, String[])} but returns the payload as received
+     * instead of a copy; {@link ByteString#asReadOnlyByteBuffer()} views it without copying either.
+     */
+    ByteString sendQueryTransactionPayload(String func, String[] args);
+
+    CompletableFuture<ByteString> sendQueryTransactionPayloadAsync(String func, String[] args);
+
+    /**
+     * Same as {@link #sendInvokeTransaction(String, String[])} but returns the payload without copying it.
+     */
+    ByteString sendInvokeTransactionPayload(String func, String[] args);
+
+    CompletableFuture<ByteString> sendInvokeTransactionPayloadAsync(String func, String[] args);
+
+    /**
+     * Queries with {@code request} encoded by {@code requestCodec} as the only argument and decodes
+     * the payload with {@code resultCodec}; see {@link care.solve.fabric.codec.Codecs} for the
+     * built-in codecs.
+     */
+    <T, R> R sendQueryTransaction(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec);
+
+    <T, R> CompletableFuture<R> sendQueryTransactionAsync(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec);
+
+    /**
+     * Invokes with {@code request} encoded by {@code requestCodec} as the only argument and decodes
+     * the payload with {@code resultCodec}.
+     */
+    <T, R> R sendInvokeTransaction(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec);
+
+    <T, R> CompletableFuture<R> sendInvokeTransactionAsync(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec);
+
+    /**
+     * Submits all requests keeping a bounded number of proposals and orderer broadcasts in flight,
+     * and waits until every transaction is committed or failed.
+     */
+    BatchResult sendInvokeBatch(List<InvokeRequest> requests);
+
 }
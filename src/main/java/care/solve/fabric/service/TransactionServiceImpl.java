@@ -1,93 +1,528 @@
 package care.solve.fabric.service;
 
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.codec.Codecs;
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.entity.BatchResult;
+import care.solve.fabric.entity.InvokeRequest;
 import com.google.protobuf.ByteString;
 import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.Channel;
 import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.Peer;
 import org.hyperledger.fabric.sdk.ProposalResponse;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.hyperledger.fabric.sdk.exception.ProposalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Service
 public class TransactionServiceImpl implements TransactionService {
 
+    private static final Logger logger = LoggerFactory.getLogger(TransactionServiceImpl.class);
+
     private HFClientFactory hfClientFactory;
     private Channel healthChannel;
     private ChaincodeService chaincodeService;
+    private Executor fabricExecutor;
+    private FabricExecutors fabricExecutors;
+    private HFProperties.Batch batchConf;
+    private long proposalWaitTimeMillis;
+    private int pageSize;
+    private EndorserSelector endorserSelector;
+    private CircuitBreakers circuitBreakers;
+    private QueryRouter queryRouter;
+    private OrdererPool ordererPool;
+    private QueryResultCache queryResultCache;
+    private TransactionMetrics transactionMetrics;
+    private AdmissionController admissionController;
+    private InvokeRetrier invokeRetrier;
 
     @Autowired
-    public TransactionServiceImpl(HFClientFactory hfClientFactory, Channel healthChannel, ChaincodeService chaincodeService) {
+    public TransactionServiceImpl(HFClientFactory hfClientFactory,
+                                  Channel healthChannel,
+                                  ChaincodeService chaincodeService,
+                                  @Qualifier("fabricExecutor") Executor fabricExecutor,
+                                  FabricExecutors fabricExecutors,
+                                  HFProperties hfProperties,
+                                  EndorserSelector endorserSelector,
+                                  CircuitBreakers circuitBreakers,
+                                  QueryRouter queryRouter,
+                                  OrdererPool ordererPool,
+                                  QueryResultCache queryResultCache,
+                                  TransactionMetrics transactionMetrics,
+                                  AdmissionController admissionController,
+                                  InvokeRetrier invokeRetrier) {
         this.hfClientFactory = hfClientFactory;
         this.healthChannel = healthChannel;
         this.chaincodeService = chaincodeService;
+        this.fabricExecutor = fabricExecutor;
+        this.fabricExecutors = fabricExecutors;
+        this.batchConf = hfProperties.getBatch();
+        this.proposalWaitTimeMillis = hfProperties.getEndorsement().getProposalWaitTimeMillis();
+        this.pageSize = hfProperties.getQuery().getPageSize();
+        this.endorserSelector = endorserSelector;
+        this.circuitBreakers = circuitBreakers;
+        this.queryRouter = queryRouter;
+        this.ordererPool = ordererPool;
+        this.queryResultCache = queryResultCache;
+        this.transactionMetrics = transactionMetrics;
+        this.admissionController = admissionController;
+        this.invokeRetrier = invokeRetrier;
     }
 
     public byte[] sendInvokeTransaction(String func, String[] args) {
+        return sendInvokeTransactionPayload(func, args).toByteArray();
+    }
+
+    public ByteString sendInvokeTransactionPayload(String func, String[] args) {
+        return invoke(func, utf8(args));
+    }
+
+    public <T, R> R sendInvokeTransaction(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        return Codecs.decode(resultCodec, invoke(func, new byte[][]{Codecs.encode(requestCodec, request)}));
+    }
+
+    /**
+     * Runs the invoke on the stage pools like an asynchronous one; only the wait for its commit
+     * stays on the calling thread.
+     */
+    private ByteString invoke(String func, byte[][] args) {
+        AdmissionController.Permit permit = admissionController.acquire(AdmissionController.Kind.INVOKE);
+        transactionMetrics.started();
+        boolean success = false;
         try {
             HFClient client = hfClientFactory.getClient();
+            ByteString payload = invokeRetrier.callAsync(func, () -> invokeAttempt(permit, client, func, args)).join();
+            success = true;
+            return payload;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            transactionMetrics.finished();
+            permit.release(success);
+        }
+    }
+
+    public CompletableFuture<byte[]> sendInvokeTransactionAsync(String func, String[] args) {
+        return sendInvokeTransactionPayloadAsync(func, args).thenApply(ByteString::toByteArray);
+    }
+
+    public CompletableFuture<ByteString> sendInvokeTransactionPayloadAsync(String func, String[] args) {
+        // the caller identity is resolved on the calling thread
+        return invokeAsync(hfClientFactory.getClient(), func, utf8(args));
+    }
+
+    public <T, R> CompletableFuture<R> sendInvokeTransactionAsync(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        byte[][] args = {Codecs.encode(requestCodec, request)};
+
+        return invokeAsync(hfClientFactory.getClient(), func, args).thenApply(payload -> Codecs.decode(resultCodec, payload));
+    }
+
+    /**
+     * Same as {@link #sendInvokeTransactionAsync(String, String[])}, but the invoke only queues
+     * for its admission slot once {@code after} has completed, successfully or not. The caller
+     * identity is still resolved at once. The hook of {@link KeyAffinityScheduler}.
+     */
+    CompletableFuture<byte[]> sendInvokeTransactionAsync(String func, String[] args, CompletionStage<?> after) {
+        HFClient client = hfClientFactory.getClient();
+
+        return after.handleAsync((result, e) -> null, fabricExecutor)
+                .thenCompose(ignored -> invokeAsync(client, func, utf8(args)))
+                .thenApply(ByteString::toByteArray)
+                .toCompletableFuture();
+    }
+
+    private CompletableFuture<ByteString> invokeAsync(HFClient client, String func, byte[][] args) {
+        return admitted(AdmissionController.Kind.INVOKE, permit -> startInvoke(client, func, args, permit));
+    }
+
+    private CompletableFuture<ByteString> startInvoke(HFClient client, String func, byte[][] args, AdmissionController.Permit permit) {
+        transactionMetrics.started();
+        return invokeRetrier.callAsync(func, () -> invokeAttempt(permit, client, func, args))
+                .whenComplete((payload, e) -> transactionMetrics.finished());
+    }
+
+    /**
+     * One attempt of an invoke that may be retried; the admission limit is fed the duration of
+     * the last attempt only.
+     */
+    private CompletableFuture<ByteString> invokeAttempt(AdmissionController.Permit permit, HFClient client, String func, byte[][] args) {
+        permit.markStarted();
+        return invoke(client, func, args);
+    }
+
+    private CompletableFuture<ByteString> invoke(HFClient client, String func, byte[][] args) {
+        return CompletableFuture
+                .supplyAsync(() -> endorse(client, func, args), fabricExecutors.endorse())
+                .thenComposeAsync(transactionPropResp -> order(client, func, transactionPropResp)
+                        .thenApplyAsync(transactionEvent -> payloadOf(transactionPropResp), fabricExecutors.commit()), fabricExecutors.order());
+    }
+
+    /**
+     * Arguments as the SDK would encode them from strings.
+     */
+    private static byte[][] utf8(String[] args) {
+        byte[][] bytes = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            bytes[i] = args[i].getBytes(UTF_8);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * The chaincode response payload, taken from the endorsement the committed transaction carries
+     * rather than from the {@code TransactionEvent}, whose accessor copies it.
+     */
+    private static ByteString payloadOf(Collection<ProposalResponse> transactionPropResp) {
+        return transactionPropResp.iterator().next().getProposalResponse().getResponse().getPayload();
+    }
+
+    public CompletableFuture<byte[]> sendQueryTransactionAsync(String func, String[] args) {
+        return sendQueryTransactionPayloadAsync(func, args).thenApply(ByteString::toByteArray);
+    }
+
+    public CompletableFuture<ByteString> sendQueryTransactionPayloadAsync(String func, String[] args) {
+        return queryAsync(func, utf8(args));
+    }
+
+    public <T, R> CompletableFuture<R> sendQueryTransactionAsync(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        return queryAsync(func, new byte[][]{Codecs.encode(requestCodec, request)}).thenApply(payload -> Codecs.decode(resultCodec, payload));
+    }
+
+    public <T, R> R sendQueryTransaction(String func, T request, Codec<T> requestCodec, Codec<R> resultCodec) {
+        return join(sendQueryTransactionAsync(func, request, requestCodec, resultCodec));
+    }
+
+    /**
+     * Resolves the chaincode id on the query pool, since a cache miss asks a peer for it; only the
+     * caller identity is resolved on the calling thread.
+     */
+    private CompletableFuture<ByteString> queryAsync(String func, byte[][] args) {
+        HFClient client = hfClientFactory.getClient();
+
+        // cached results are served without taking a slot
+        return CompletableFuture
+                .supplyAsync(chaincodeService::getLatestChaincodeId, fabricExecutors.query())
+                .thenCompose(chaincodeID -> queryResultCache.get(chaincodeID, func, args, () -> admitted(AdmissionController.Kind.QUERY,
+                        permit -> queryRouter.route(healthChannel.getPeers(), peer -> queryPeer(client, peer, chaincodeID, func, args)))))
+                .whenComplete((payload, e) -> {
+                    if (e != null) {
+                        transactionMetrics.queryFailed(func);
+                        logger.warn("Query {} failed", func, e instanceof CompletionException ? e.getCause() : e);
+                    }
+                });
+    }
+
+    public Iterator<byte[]> sendPagedQueryTransaction(String func, String[] args, int pageSize) {
+        String[] pagedArgs = Arrays.copyOf(args, args.length + 2);
+        pagedArgs[args.length] = Integer.toString(pageSize);
+
+        return new PagedQueryIterator(bookmark -> {
+            String[] pageArgs = pagedArgs.clone();
+            pageArgs[args.length + 1] = bookmark;
+            return sendQueryTransactionPayloadAsync(func, pageArgs);
+        });
+    }
+
+    public Iterator<byte[]> sendPagedQueryTransaction(String func, String[] args) {
+        return sendPagedQueryTransaction(func, args, pageSize);
+    }
+
+    /**
+     * Runs the call once an admission slot is free, holding it until the call's future completes.
+     * No thread waits for the slot, and a rejection is returned as a failed future, so
+     * asynchronous callers see it like any other failure.
+     */
+    private <T> CompletableFuture<T> admitted(AdmissionController.Kind kind, Function<AdmissionController.Permit, CompletableFuture<T>> call) {
+        return admissionController.acquireAsync(kind).thenCompose(permit -> {
+            CompletableFuture<T> result;
+            try {
+                result = call.apply(permit);
+            } catch (RuntimeException e) {
+                permit.release(false);
+                throw e;
+            }
+
+            return result.whenComplete((value, e) -> permit.release(e == null));
+        });
+    }
+
+    public BatchResult sendInvokeBatch(List<InvokeRequest> requests) {
+        Semaphore proposalWindow = new Semaphore(batchConf.getMaxInFlightProposals());
+        Semaphore broadcastWindow = new Semaphore(batchConf.getMaxInFlightBroadcasts());
+        HFClient client = hfClientFactory.getClient();
+
+        long batchStart = System.nanoTime();
+        List<CompletableFuture<BatchResult.Item>> pending = new ArrayList<>(requests.size());
+        for (InvokeRequest request : requests) {
+            acquire(proposalWindow);
+            long start = System.nanoTime();
+            byte[][] args = utf8(request.getArgs());
+            AdmissionController.Permit permit;
+            try {
+                permit = admissionController.acquire(AdmissionController.Kind.INVOKE);
+            } catch (AdmissionRejectedException e) {
+                proposalWindow.release();
+                pending.add(CompletableFuture.completedFuture(new BatchResult.Item(null, e, 0)));
+                continue;
+            }
+            transactionMetrics.started();
 
+            CompletableFuture<Collection<ProposalResponse>> endorsed = CompletableFuture
+                    .supplyAsync(() -> endorse(client, request.getFunc(), args), fabricExecutors.endorse());
+            endorsed.whenComplete((responses, e) -> {
+                if (e != null) {
+                    proposalWindow.release();
+                }
+            });
+
+            CompletableFuture<ByteString> committed = endorsed.thenComposeAsync(responses -> {
+                // the endorsement slot is handed over only once the broadcast slot is taken
+                try {
+                    acquire(broadcastWindow);
+                } finally {
+                    proposalWindow.release();
+                }
+
+                try {
+                    return order(client, request.getFunc(), responses)
+                            .thenApplyAsync(transactionEvent -> payloadOf(responses), fabricExecutors.commit());
+                } finally {
+                    broadcastWindow.release();
+                }
+            }, fabricExecutors.order());
+            // retries run outside the windows, still holding the admission slot
+            committed = invokeRetrier.callAsync(request.getFunc(), committed, () -> invokeAttempt(permit, client, request.getFunc(), args));
+
+            pending.add(committed.handle((payload, e) -> {
+                transactionMetrics.finished();
+                permit.release(e == null);
+                long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (e != null) {
+                    return new BatchResult.Item(null, e instanceof CompletionException ? e.getCause() : e, latencyMillis);
+                }
+
+                return new BatchResult.Item(payload.toByteArray(), null, latencyMillis);
+            }));
+        }
+
+        List<BatchResult.Item> items = pending.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+        long elapsedNanos = System.nanoTime() - batchStart;
+
+        return new BatchResult(items, computeStatistics(items, elapsedNanos));
+    }
+
+    private static BatchResult.Statistics computeStatistics(List<BatchResult.Item> items, long elapsedNanos) {
+        long[] latencies = items.stream()
+                .filter(BatchResult.Item::isSuccess)
+                .mapToLong(BatchResult.Item::getLatencyMillis)
+                .sorted()
+                .toArray();
+        int succeeded = latencies.length;
+        double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        BatchResult.Statistics statistics = new BatchResult.Statistics();
+        statistics.setSubmitted(items.size());
+        statistics.setSucceeded(succeeded);
+        statistics.setFailed(items.size() - succeeded);
+        statistics.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        statistics.setThroughputPerSecond(elapsedSeconds > 0 ? succeeded / elapsedSeconds : 0);
+        if (succeeded > 0) {
+            statistics.setMeanLatencyMillis((long) Arrays.stream(latencies).average().orElse(0));
+            statistics.setP50LatencyMillis(percentile(latencies, 0.50));
+            statistics.setP95LatencyMillis(percentile(latencies, 0.95));
+            statistics.setP99LatencyMillis(percentile(latencies, 0.99));
+            statistics.setMaxLatencyMillis(latencies[succeeded - 1]);
+        }
+
+        return statistics;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    private static void acquire(Semaphore window) {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Endorsers among the available peers. Only the selected ones take the probe slot of their
+     * breaker; when a slot went to another transaction meanwhile the selection is made once more
+     * without those peers, and kept when that leaves nothing to select from.
+     */
+    private Collection<Peer> selectEndorsers() {
+        List<Peer> candidates = circuitBreakers.availablePeers(healthChannel.getPeers());
+        Collection<Peer> endorsers = endorserSelector.select(candidates);
+        List<Peer> refused = endorsers.stream()
+                .filter(peer -> !circuitBreakers.tryAcquireProbe(peer.getName()))
+                .collect(Collectors.toList());
+        if (refused.isEmpty() || !candidates.removeAll(refused) || candidates.isEmpty()) {
+            return endorsers;
+        }
+
+        Collection<Peer> reselected = endorserSelector.select(candidates);
+        // a refusal this time is not worth another round, the peer is asked anyway
+        reselected.stream()
+                .filter(peer -> !endorsers.contains(peer))
+                .forEach(peer -> circuitBreakers.tryAcquireProbe(peer.getName()));
+
+        return reselected;
+    }
+
+    private Collection<ProposalResponse> endorse(HFClient client, String func, byte[][] args) {
+        try {
             TransactionProposalRequest transactionProposalRequest = client.newTransactionProposalRequest();
-            transactionProposalRequest.setChaincodeID(chaincodeService.queryLatestChaincodeId());
+            transactionProposalRequest.setChaincodeID(chaincodeService.getLatestChaincodeId());
             transactionProposalRequest.setFcn(func);
-            transactionProposalRequest.setProposalWaitTime(20000L);
-            transactionProposalRequest.setArgs(args);
+            transactionProposalRequest.setProposalWaitTime(proposalWaitTimeMillis);
+            transactionProposalRequest.setArgBytes(args);
 
-            Collection<ProposalResponse> transactionPropResp = healthChannel.sendTransactionProposal(transactionProposalRequest, healthChannel.getPeers());
+            Collection<Peer> endorsers = selectEndorsers();
+            long start = System.nanoTime();
+            Collection<ProposalResponse> transactionPropResp = healthChannel.sendTransactionProposal(transactionProposalRequest, endorsers);
+            long elapsed = System.nanoTime() - start;
+            transactionMetrics.endorsed(func, transactionPropResp, elapsed);
+            // the time is that of the slowest endorser, a peer's own latency only when it was alone
+            boolean timedPerPeer = transactionPropResp.size() == 1;
+            transactionPropResp.forEach(resp -> {
+                boolean success = !CircuitBreakers.isNodeFailure(resp);
+                if (!timedPerPeer) {
+                    circuitBreakers.recordOutcome(resp.getPeer().getName(), success);
+                } else if (success) {
+                    circuitBreakers.recordSuccess(resp.getPeer().getName(), elapsed);
+                } else {
+                    circuitBreakers.recordFailure(resp.getPeer().getName(), elapsed);
+                }
+            });
             long failedResponsesCount = transactionPropResp.stream().filter(resp -> !resp.getStatus().equals(ProposalResponse.Status.SUCCESS)).count();
             if (failedResponsesCount != 0) {
                 throw new RuntimeException(String.format("Failed transaction: %d failed from %d ", failedResponsesCount, transactionPropResp.size()));
             }
 
-            CompletableFuture<BlockEvent.TransactionEvent> proposalResponce = healthChannel.sendTransaction(transactionPropResp, client.getUserContext());
-
-            return proposalResponce.get().getTransactionActionInfo(0).getProposalResponsePayload();
-        } catch (InvalidArgumentException | ProposalException | InterruptedException | ExecutionException e) {
+            return transactionPropResp;
+        } catch (InvalidArgumentException | ProposalException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Broadcasts the endorsed transaction through the {@link OrdererPool}, timing the ordering
+     * call and, separately, the wait until the transaction is committed.
+     */
+    private CompletableFuture<BlockEvent.TransactionEvent> order(HFClient client, String func, Collection<ProposalResponse> responses) {
+        long start = System.nanoTime();
+        CompletableFuture<BlockEvent.TransactionEvent> committed = ordererPool.broadcast(healthChannel, responses, client.getUserContext());
+        long ordered = System.nanoTime();
+        if (committed.isCompletedExceptionally()) {
+            transactionMetrics.orderingFailed();
+            return committed;
+        }
+
+        transactionMetrics.ordered(func, ordered - start);
+        return committed.whenComplete((transactionEvent, e) -> {
+            if (e == null) {
+                transactionMetrics.committed(func, System.nanoTime() - ordered);
+            }
+        });
+    }
+
     public byte[] sendQueryTransaction(String func, String[] args) {
+        return sendQueryTransactionPayload(func, args).toByteArray();
+    }
+
+    public ByteString sendQueryTransactionPayload(String func, String[] args) {
+        return join(sendQueryTransactionPayloadAsync(func, args));
+    }
+
+    /**
+     * Waits for the result, throwing the failure it completed with.
+     */
+    private static <T> T join(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private ByteString queryPeer(HFClient client, Peer peer, ChaincodeID chaincodeID, String func, byte[][] args) {
         try {
-            QueryByChaincodeRequest queryByChaincodeRequest = hfClientFactory.getClient().newQueryProposalRequest();
+            QueryByChaincodeRequest queryByChaincodeRequest = client.newQueryProposalRequest();
             queryByChaincodeRequest.setFcn(func);
-            queryByChaincodeRequest.setArgs(args);
-            queryByChaincodeRequest.setChaincodeID(chaincodeService.queryLatestChaincodeId());
+            queryByChaincodeRequest.setArgBytes(args);
+            queryByChaincodeRequest.setChaincodeID(chaincodeID);
+            queryByChaincodeRequest.setProposalWaitTime(proposalWaitTimeMillis);
 
             Map<String, byte[]> tm2 = new HashMap<>();
             tm2.put("HyperLedgerFabric", "QueryByChaincodeRequest:JavaSDK".getBytes(UTF_8));
             tm2.put("method", "QueryByChaincodeRequest".getBytes(UTF_8));
             queryByChaincodeRequest.setTransientMap(tm2);
 
-            Collection<ProposalResponse> queryProposals = healthChannel.queryByChaincode(queryByChaincodeRequest, healthChannel.getPeers());
-            for (ProposalResponse proposalResponse : queryProposals) {
-                if (!proposalResponse.isVerified() || proposalResponse.getStatus() != ProposalResponse.Status.SUCCESS) {
-                    System.out.println("Failed query proposal from peer " + proposalResponse.getPeer().getName() + " status: " + proposalResponse.getStatus() +
-                            ". Messages: " + proposalResponse.getMessage()
-                            + ". Was verified : " + proposalResponse.isVerified());
-                } else {
-                    String payload = proposalResponse.getProposalResponse().getResponse().getPayload().toStringUtf8();
-                    System.out.println(String.format("Query payload from peer %s returned %s", proposalResponse.getPeer().getName(), payload));
-
-                    return proposalResponse.getProposalResponse().getResponse().getPayload().toByteArray();
+            long start = System.nanoTime();
+            Collection<ProposalResponse> queryProposals = healthChannel.queryByChaincode(queryByChaincodeRequest, Collections.singletonList(peer));
+            ProposalResponse proposalResponse = queryProposals.iterator().next();
+            transactionMetrics.queried(func, proposalResponse, System.nanoTime() - start);
+            if (!proposalResponse.isVerified() || proposalResponse.getStatus() != ProposalResponse.Status.SUCCESS) {
+                if (!CircuitBreakers.isNodeFailure(proposalResponse)) {
+                    throw new ChaincodeResponseException(proposalResponse.getPeer().getName(),
+                            proposalResponse.getProposalResponse().getResponse().getStatus(), proposalResponse.getMessage());
                 }
+                throw new RuntimeException("Failed query proposal from peer " + proposalResponse.getPeer().getName() + " status: " + proposalResponse.getStatus() +
+                        ". Messages: " + proposalResponse.getMessage()
+                        + ". Was verified : " + proposalResponse.isVerified());
+            }
+
+            ByteString payload = proposalResponse.getProposalResponse().getResponse().getPayload();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Query payload from peer {} returned {}", proposalResponse.getPeer().getName(), payload.toStringUtf8());
             }
+
+            return payload;
         } catch (InvalidArgumentException | ProposalException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
-
-        return null;
     }
 
 }
@@ -0,0 +1,175 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionControllerTest {
+
+    private static final int MIN_CONCURRENCY = 2;
+    private static final int MAX_CONCURRENCY = 8;
+
+    private HFProperties.Admission admissionConf;
+    private ScheduledExecutorService scheduler;
+    private AdmissionController admissionController;
+
+    @Before
+    public void setUp() {
+        admissionConf = new HFProperties.Admission();
+        admissionConf.setAdaptive(true);
+        admissionConf.setMinConcurrency(MIN_CONCURRENCY);
+        admissionConf.setMaxConcurrency(MAX_CONCURRENCY);
+        admissionConf.setBackoffRatio(0.5);
+        admissionConf.setLatencyTolerance(2.0);
+        admissionConf.setMaxQueueSize(0);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        admissionController = new AdmissionController("test", admissionConf, scheduler, new MetricRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void slowTransactionsShrinkTheLimitDownToMinConcurrency() throws InterruptedException {
+        assertEquals(MAX_CONCURRENCY, admissionController.getLimit());
+        shrinkToMinimum();
+
+        assertEquals(MIN_CONCURRENCY, admissionController.getLimit());
+    }
+
+    @Test
+    public void fastTransactionsGrowTheLimitBackUpToMaxConcurrency() throws InterruptedException {
+        shrinkToMinimum();
+        // every transaction is fast from now on
+        admissionConf.setLatencyTolerance(1e9);
+
+        for (int round = 0; round < 200; round++) {
+            List<AdmissionController.Permit> permits = new ArrayList<>();
+            int limit = admissionController.getLimit();
+            for (int i = 0; i < limit; i++) {
+                permits.add(admissionController.acquire(AdmissionController.Kind.INVOKE));
+            }
+            permits.forEach(permit -> permit.release(true));
+            assertTrue(admissionController.getLimit() <= MAX_CONCURRENCY);
+        }
+
+        assertEquals(MAX_CONCURRENCY, admissionController.getLimit());
+    }
+
+    @Test
+    public void queriesAndInvokesKeepSeparateBaselines() throws InterruptedException {
+        admissionController.acquire(AdmissionController.Kind.QUERY).release(true);
+        AdmissionController.Permit invoke = admissionController.acquire(AdmissionController.Kind.INVOKE);
+        Thread.sleep(5);
+        invoke.release(true);
+
+        // the first invoke is its own baseline, however slower than the query it is
+        assertEquals(MAX_CONCURRENCY, admissionController.getLimit());
+    }
+
+    @Test
+    public void fastFailuresDoNotLowerTheBaseline() throws InterruptedException {
+        invokeTaking(5, true);
+        for (int i = 0; i < 100; i++) {
+            admissionController.acquire(AdmissionController.Kind.INVOKE).release(false);
+        }
+        for (int i = 0; i < 10; i++) {
+            invokeTaking(5, true);
+        }
+
+        assertEquals(MAX_CONCURRENCY, admissionController.getLimit());
+    }
+
+    @Test
+    public void onlyTheLastAttemptIsMeasured() throws InterruptedException {
+        invokeTaking(5, true);
+        AdmissionController.Permit permit = admissionController.acquire(AdmissionController.Kind.INVOKE);
+        // a failed attempt and the backoff before the retry
+        Thread.sleep(50);
+        permit.markStarted();
+        Thread.sleep(5);
+        permit.release(true);
+
+        assertEquals(MAX_CONCURRENCY, admissionController.getLimit());
+    }
+
+    @Test(expected = AdmissionRejectedException.class)
+    public void rejectsPastTheLimitWhenTheQueueIsFull() {
+        admissionConf.setAdaptive(false);
+        for (int i = 0; i <= MAX_CONCURRENCY; i++) {
+            admissionController.acquire(AdmissionController.Kind.INVOKE);
+        }
+    }
+
+    @Test
+    public void asynchronousWaiterIsAdmittedByARelease() {
+        admissionConf.setMaxQueueSize(1);
+        List<AdmissionController.Permit> permits = fill();
+
+        CompletableFuture<AdmissionController.Permit> waiting = admissionController.acquireAsync(AdmissionController.Kind.INVOKE);
+        assertFalse(waiting.isDone());
+        assertEquals(1, admissionController.getQueued());
+        assertTrue(admissionController.acquireAsync(AdmissionController.Kind.QUERY).isCompletedExceptionally());
+
+        permits.get(0).release(true);
+        assertTrue(waiting.isDone());
+        assertEquals(0, admissionController.getQueued());
+        assertEquals(MAX_CONCURRENCY, admissionController.getInFlight());
+    }
+
+    @Test
+    public void asynchronousWaiterIsRejectedWhenTheWaitExpires() {
+        admissionConf.setMaxQueueSize(1);
+        admissionConf.setMaxQueueWaitMillis(20);
+        fill();
+
+        try {
+            admissionController.acquireAsync(AdmissionController.Kind.INVOKE).join();
+            fail("admitted past the limit");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof AdmissionRejectedException);
+        }
+        assertEquals(0, admissionController.getQueued());
+        assertEquals(MAX_CONCURRENCY, admissionController.getInFlight());
+    }
+
+    private List<AdmissionController.Permit> fill() {
+        admissionConf.setAdaptive(false);
+        List<AdmissionController.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < MAX_CONCURRENCY; i++) {
+            permits.add(admissionController.acquireAsync(AdmissionController.Kind.INVOKE).join());
+        }
+
+        return permits;
+    }
+
+    private void invokeTaking(long millis, boolean success) throws InterruptedException {
+        AdmissionController.Permit permit = admissionController.acquire(AdmissionController.Kind.INVOKE);
+        Thread.sleep(millis);
+        permit.release(success);
+    }
+
+    private void shrinkToMinimum() throws InterruptedException {
+        admissionController.acquire(AdmissionController.Kind.INVOKE).release(true);
+        for (int i = 0; i < 10; i++) {
+            invokeTaking(5, true);
+            assertTrue(admissionController.getLimit() >= MIN_CONCURRENCY);
+        }
+    }
+}
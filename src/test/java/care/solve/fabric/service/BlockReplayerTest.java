@@ -0,0 +1,139 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockchainInfo;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlockReplayerTest {
+
+    private HFProperties hfProperties;
+    private Channel channel;
+    private ScheduledExecutorService scheduler;
+    private AtomicInteger fetches;
+    private Executor fetchExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        hfProperties = new HFProperties();
+        channel = mock(Channel.class);
+        when(channel.queryBlockByNumber(anyLong())).thenAnswer(invocation -> Blocks.block((Long) invocation.getArguments()[0], "cc"));
+        scheduler = mock(ScheduledExecutorService.class);
+        fetches = new AtomicInteger();
+        fetchExecutor = task -> {
+            fetches.incrementAndGet();
+            task.run();
+        };
+    }
+
+    @Test
+    public void catchesUpFromTheCheckpointOnTheFetchExecutorThenDeliversHeldBlocks() throws Exception {
+        height(5);
+        RecordingConsumer consumer = new RecordingConsumer(2);
+        BlockReplayer replayer = replayer(consumer);
+
+        replayer.received(Blocks.block(5, "cc"));
+        assertEquals("held until caught up", Collections.emptyList(), consumer.accepted);
+
+        replayer.start();
+        assertEquals(Arrays.asList(2L, 3L, 4L, 5L), consumer.accepted);
+        assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void liveBlockPastAGapHasTheMissingOnesFetchedFirst() throws Exception {
+        height(0);
+        RecordingConsumer consumer = new RecordingConsumer(0);
+        BlockReplayer replayer = replayer(consumer);
+        replayer.start();
+
+        replayer.received(Blocks.block(2, "cc"));
+        replayer.received(Blocks.block(3, "cc"));
+
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L), consumer.accepted);
+    }
+
+    @Test
+    public void oldestHeldBlocksMakeRoomAndAreFetchedAsAGap() throws Exception {
+        hfProperties.getReplay().setMaxPendingBlocks(2);
+        height(3);
+        RecordingConsumer consumer = new RecordingConsumer(0);
+        BlockReplayer replayer = replayer(consumer);
+
+        for (long number = 3; number <= 6; number++) {
+            replayer.received(Blocks.block(number, "cc"));
+        }
+        replayer.start();
+
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L), consumer.accepted);
+        verify(channel).queryBlockByNumber(4);
+        verify(channel, never()).queryBlockByNumber(5);
+    }
+
+    @Test
+    public void failedCatchUpIsRetriedLater() throws Exception {
+        when(channel.queryBlockchainInfo()).thenThrow(new ProposalException("unavailable"));
+        RecordingConsumer consumer = new RecordingConsumer(0);
+        BlockReplayer replayer = replayer(consumer);
+
+        replayer.start();
+        replayer.received(Blocks.block(0, "cc"));
+
+        assertEquals("not live yet", Collections.emptyList(), consumer.accepted);
+        verify(scheduler).schedule(any(Runnable.class), eq(hfProperties.getReplay().getRetryMillis()), eq(TimeUnit.MILLISECONDS));
+    }
+
+    private BlockReplayer replayer(BlockConsumer consumer) {
+        return new BlockReplayer(channel, Collections.singletonList(consumer), hfProperties, Runnable::run, fetchExecutor,
+                scheduler, new MetricRegistry());
+    }
+
+    private void height(long height) throws Exception {
+        BlockchainInfo blockchainInfo = mock(BlockchainInfo.class);
+        when(blockchainInfo.getHeight()).thenReturn(height);
+        when(channel.queryBlockchainInfo()).thenReturn(blockchainInfo);
+    }
+
+    private static class RecordingConsumer implements BlockConsumer {
+
+        private final List<Long> accepted = new ArrayList<>();
+        private long nextBlock;
+
+        RecordingConsumer(long nextBlock) {
+            this.nextBlock = nextBlock;
+        }
+
+        @Override
+        public long getNextBlock() {
+            return nextBlock;
+        }
+
+        @Override
+        public void accept(BlockInfo blockInfo) {
+            accepted.add(blockInfo.getBlockNumber());
+            nextBlock = blockInfo.getBlockNumber() + 1;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package care.solve.fabric.service;
+
+import org.hyperledger.fabric.protos.ledger.rwset.Rwset;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Block events for tests, holding one valid transaction that writes the given keys.
+ */
+final class Blocks {
+
+    private Blocks() {
+    }
+
+    static BlockEvent block(long number, String namespace, String... writtenKeys) {
+        KvRwset.KVRWSet.Builder writes = KvRwset.KVRWSet.newBuilder();
+        for (String key : writtenKeys) {
+            writes.addWrites(KvRwset.KVWrite.newBuilder().setKey(key));
+        }
+        Rwset.TxReadWriteSet rwset = Rwset.TxReadWriteSet.newBuilder()
+                .addNsRwset(Rwset.NsReadWriteSet.newBuilder()
+                        .setNamespace(namespace)
+                        .setRwset(writes.build().toByteString()))
+                .build();
+
+        BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo action = mock(BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo.class);
+        when(action.getTxReadWriteSet()).thenReturn(new TxReadWriteSetInfo(rwset));
+        BlockInfo.TransactionEnvelopeInfo transaction = mock(BlockInfo.TransactionEnvelopeInfo.class);
+        when(transaction.getType()).thenReturn(BlockInfo.EnvelopeType.TRANSACTION_ENVELOPE);
+        when(transaction.isValid()).thenReturn(true);
+        when(transaction.getTransactionActionInfos()).thenReturn(Collections.singletonList(action));
+
+        BlockEvent blockEvent = mock(BlockEvent.class);
+        when(blockEvent.getBlockNumber()).thenReturn(number);
+        when(blockEvent.getEnvelopeInfos()).thenReturn(Collections.<BlockInfo.EnvelopeInfo>singletonList(transaction));
+
+        return blockEvent;
+    }
+}
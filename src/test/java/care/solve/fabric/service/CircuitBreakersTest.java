@@ -0,0 +1,148 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.protos.peer.FabricProposalResponse;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakersTest {
+
+    private static final List<String> NODES = Arrays.asList("n1", "n2");
+
+    private HFProperties hfProperties;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        HFProperties.CircuitBreaker breakerConf = hfProperties.getCircuitBreaker();
+        breakerConf.setMinimumCalls(3);
+        breakerConf.setOpenMillis(60000);
+        breakerConf.setProbeIntervalMillis(60000);
+        breakerConf.setHalfOpenProbes(2);
+    }
+
+    @Test
+    public void opensOnceTheHealthScoreDropsAfterTheMinimumCalls() {
+        CircuitBreakers breakers = breakers();
+
+        fail(breakers, "n1", 2);
+        assertEquals(CircuitBreakers.State.CLOSED, breakers.getState("n1"));
+
+        fail(breakers, "n1", 1);
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getState("n1"));
+        assertEquals(Collections.singletonList("n2"), breakers.available(NODES, Function.identity()));
+    }
+
+    @Test
+    public void filteringLeavesTheStateAndTheProbeSlotAlone() {
+        hfProperties.getCircuitBreaker().setOpenMillis(0);
+        CircuitBreakers breakers = breakers();
+        fail(breakers, "n1", 3);
+
+        assertEquals(NODES, breakers.available(NODES, Function.identity()));
+        assertTrue(breakers.isAvailable("n1"));
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getState("n1"));
+
+        assertTrue(breakers.tryAcquireProbe("n1"));
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breakers.getState("n1"));
+        assertFalse("the probe slot is taken", breakers.tryAcquireProbe("n1"));
+        assertFalse(breakers.isAvailable("n1"));
+        assertEquals(Collections.singletonList("n2"), breakers.available(NODES, Function.identity()));
+    }
+
+    @Test
+    public void probeSuccessesCloseTheBreaker() {
+        hfProperties.getCircuitBreaker().setOpenMillis(0);
+        hfProperties.getCircuitBreaker().setProbeIntervalMillis(0);
+        CircuitBreakers breakers = breakers();
+        fail(breakers, "n1", 3);
+
+        assertTrue(breakers.tryAcquireProbe("n1"));
+        breakers.recordSuccess("n1", 1000);
+        assertEquals(CircuitBreakers.State.HALF_OPEN, breakers.getState("n1"));
+
+        assertTrue(breakers.tryAcquireProbe("n1"));
+        breakers.recordSuccess("n1", 1000);
+        assertEquals(CircuitBreakers.State.CLOSED, breakers.getState("n1"));
+    }
+
+    @Test
+    public void failedProbeReopensTheBreaker() {
+        hfProperties.getCircuitBreaker().setOpenMillis(0);
+        CircuitBreakers breakers = breakers();
+        fail(breakers, "n1", 3);
+
+        assertTrue(breakers.tryAcquireProbe("n1"));
+        breakers.recordFailure("n1", 1000);
+        assertEquals(CircuitBreakers.State.OPEN, breakers.getState("n1"));
+    }
+
+    @Test
+    public void everyNodeIsUsedWhenAllAreOpen() {
+        CircuitBreakers breakers = breakers();
+        fail(breakers, "n1", 3);
+        fail(breakers, "n2", 3);
+
+        assertEquals(NODES, breakers.available(NODES, Function.identity()));
+        assertFalse(breakers.tryAcquireProbe("n1"));
+    }
+
+    @Test
+    public void disabledBreakersLetEverythingThrough() {
+        hfProperties.getCircuitBreaker().setEnabled(false);
+        CircuitBreakers breakers = breakers();
+        fail(breakers, "n1", 3);
+
+        List<String> available = breakers.available(NODES, Function.identity());
+        assertEquals(NODES, available);
+        available.clear();
+        assertEquals("a copy is returned", 2, NODES.size());
+        assertTrue(breakers.tryAcquireProbe("n1"));
+    }
+
+    @Test
+    public void chaincodeErrorIsNotANodeFailure() {
+        assertFalse(CircuitBreakers.isNodeFailure(response(ProposalResponse.Status.SUCCESS, 200)));
+        assertFalse(CircuitBreakers.isNodeFailure(response(ProposalResponse.Status.FAILURE, 500)));
+        assertTrue(CircuitBreakers.isNodeFailure(response(ProposalResponse.Status.FAILURE, -1)));
+    }
+
+    private CircuitBreakers breakers() {
+        return new CircuitBreakers(new PeerLatencyTracker(), hfProperties, new MetricRegistry());
+    }
+
+    private static void fail(CircuitBreakers breakers, String node, int times) {
+        for (int i = 0; i < times; i++) {
+            breakers.recordFailure(node, 1000);
+        }
+    }
+
+    /**
+     * @param peerStatus status of the peer's response, or -1 for none at all
+     */
+    private static ProposalResponse response(ProposalResponse.Status status, int peerStatus) {
+        ProposalResponse response = mock(ProposalResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.isVerified()).thenReturn(true);
+        if (peerStatus >= 0) {
+            when(response.getProposalResponse()).thenReturn(FabricProposalResponse.ProposalResponse.newBuilder()
+                    .setResponse(FabricProposalResponse.Response.newBuilder().setStatus(peerStatus))
+                    .build());
+        }
+
+        return response;
+    }
+}
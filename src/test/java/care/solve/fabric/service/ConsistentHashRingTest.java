@@ -0,0 +1,65 @@
+package care.solve.fabric.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 20000;
+    private static final int VIRTUAL_NODES = 160;
+
+    @Test
+    public void addingAShardMovesOnlyKeysToTheNewShard() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("ch1", "ch2", "ch3"), VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("ch1", "ch2", "ch3", "ch4"), VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "patient-" + i;
+            String from = before.shardOf(key);
+            String to = after.shardOf(key);
+            if (!from.equals(to)) {
+                assertEquals("a key may only move to the added shard", "ch4", to);
+                moved++;
+            }
+        }
+
+        double movedFraction = moved / (double) KEYS;
+        assertTrue("moved " + movedFraction + " of the keys, expected about 1/4", movedFraction > 0.18 && movedFraction < 0.32);
+    }
+
+    @Test
+    public void mappingDoesNotDependOnShardOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("ch1", "ch2", "ch3"), VIRTUAL_NODES);
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("ch3", "ch1", "ch2"), VIRTUAL_NODES);
+
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(ring.shardOf("patient-" + i), reordered.shardOf("patient-" + i));
+        }
+    }
+
+    @Test
+    public void keysSpreadOverAllShards() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("ch1", "ch2", "ch3", "ch4"), VIRTUAL_NODES);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.shardOf("patient-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        counts.forEach((shard, count) -> assertTrue(shard + " holds " + count + " keys", count > KEYS / 4 * 0.7 && count < KEYS / 4 * 1.3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyRing() {
+        new ConsistentHashRing(Collections.emptyList(), VIRTUAL_NODES);
+    }
+}
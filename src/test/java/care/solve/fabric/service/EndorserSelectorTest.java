@@ -0,0 +1,146 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.google.common.collect.ImmutableMap;
+import org.hyperledger.fabric.protos.common.MspPrincipal;
+import org.hyperledger.fabric.protos.common.Policies;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Peer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EndorserSelectorTest {
+
+    private static final List<String> MSPS = Arrays.asList("Org1MSP", "Org2MSP", "Org3MSP");
+
+    private HFProperties hfProperties;
+    private PeerLatencyTracker tracker;
+    private Peer p1;
+    private Peer p2;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        Map<String, HFProperties.Organization> orgs = new HashMap<>();
+        orgs.put("org1", organization("Org1MSP", "p1"));
+        orgs.put("org2", organization("Org2MSP", "p2"));
+        hfProperties.setOrgs(orgs);
+        tracker = new PeerLatencyTracker();
+        p1 = peer("p1");
+        p2 = peer("p2");
+    }
+
+    @Test
+    public void thresholdPolicyReducesToEveryPairOfMsps() {
+        List<Map<String, Integer>> layouts = EndorserSelector.computeLayouts(policy(outOf(2, signedBy(0), signedBy(1), signedBy(2))));
+
+        assertEquals(Arrays.asList(
+                ImmutableMap.of("Org1MSP", 1, "Org2MSP", 1),
+                ImmutableMap.of("Org1MSP", 1, "Org3MSP", 1),
+                ImmutableMap.of("Org2MSP", 1, "Org3MSP", 1)), layouts);
+    }
+
+    @Test
+    public void nestedPolicyKeepsOnlyMinimalLayouts() {
+        // Org1 and (Org2 or Org3), or Org1 together with both
+        Policies.SignaturePolicy rule = outOf(1,
+                outOf(2, signedBy(0), outOf(1, signedBy(1), signedBy(2))),
+                outOf(3, signedBy(0), signedBy(1), signedBy(2)));
+
+        assertEquals(Arrays.asList(
+                ImmutableMap.of("Org1MSP", 1, "Org2MSP", 1),
+                ImmutableMap.of("Org1MSP", 1, "Org3MSP", 1)), EndorserSelector.computeLayouts(policy(rule)));
+    }
+
+    @Test
+    public void signaturesOfOneMspAddUp() {
+        List<Map<String, Integer>> layouts = EndorserSelector.computeLayouts(policy(outOf(2, signedBy(0), signedBy(0))));
+
+        assertEquals(Collections.singletonList(Collections.singletonMap("Org1MSP", 2)), layouts);
+    }
+
+    @Test
+    public void roundRobinTakesTurnsOverTheSatisfiableLayouts() {
+        EndorserSelector selector = selector(outOf(1, signedBy(0), signedBy(1), signedBy(2)));
+
+        assertEquals(Collections.singletonList(p1), selector.select(Arrays.asList(p1, p2)));
+        assertEquals(Collections.singletonList(p2), selector.select(Arrays.asList(p1, p2)));
+        assertEquals(Collections.singletonList(p1), selector.select(Arrays.asList(p1, p2)));
+    }
+
+    @Test
+    public void leastLatencyPicksTheFasterLayout() {
+        hfProperties.getEndorsement().setStrategy(HFProperties.Endorsement.Strategy.LEAST_LATENCY);
+        tracker.recordSuccess("p1", TimeUnit.MILLISECONDS.toNanos(50));
+        tracker.recordSuccess("p2", TimeUnit.MILLISECONDS.toNanos(5));
+        EndorserSelector selector = selector(outOf(1, signedBy(0), signedBy(1)));
+
+        assertEquals(Collections.singletonList(p2), selector.select(Arrays.asList(p1, p2)));
+    }
+
+    @Test
+    public void everyPeerIsAskedWhenNoLayoutCanBeSatisfied() {
+        EndorserSelector selector = selector(outOf(2, signedBy(0), signedBy(2)));
+
+        assertEquals(Arrays.asList(p1, p2), selector.select(Arrays.asList(p1, p2)));
+    }
+
+    private EndorserSelector selector(Policies.SignaturePolicy rule) {
+        return new EndorserSelector(policy(rule), hfProperties, tracker);
+    }
+
+    private static ChaincodeEndorsementPolicy policy(Policies.SignaturePolicy rule) {
+        Policies.SignaturePolicyEnvelope.Builder envelope = Policies.SignaturePolicyEnvelope.newBuilder().setRule(rule);
+        for (String mspId : MSPS) {
+            envelope.addIdentities(MspPrincipal.MSPPrincipal.newBuilder()
+                    .setPrincipalClassification(MspPrincipal.MSPPrincipal.Classification.ROLE)
+                    .setPrincipal(MspPrincipal.MSPRole.newBuilder()
+                            .setMspIdentifier(mspId)
+                            .setRole(MspPrincipal.MSPRole.MSPRoleType.MEMBER)
+                            .build()
+                            .toByteString()));
+        }
+        ChaincodeEndorsementPolicy policy = new ChaincodeEndorsementPolicy();
+        policy.fromBytes(envelope.build().toByteArray());
+
+        return policy;
+    }
+
+    private static Policies.SignaturePolicy signedBy(int principal) {
+        return Policies.SignaturePolicy.newBuilder().setSignedBy(principal).build();
+    }
+
+    private static Policies.SignaturePolicy outOf(int n, Policies.SignaturePolicy... rules) {
+        return Policies.SignaturePolicy.newBuilder()
+                .setNOutOf(Policies.SignaturePolicy.NOutOf.newBuilder().setN(n).addAllRules(Arrays.asList(rules)))
+                .build();
+    }
+
+    private static HFProperties.Organization organization(String mspId, String peerName) {
+        HFProperties.Peer peer = new HFProperties.Peer();
+        peer.setName(peerName);
+        HFProperties.Organization organization = new HFProperties.Organization();
+        organization.setMspId(mspId);
+        organization.setPeers(Collections.singletonList(peer));
+
+        return organization;
+    }
+
+    private static Peer peer(String name) {
+        Peer peer = mock(Peer.class);
+        when(peer.getName()).thenReturn(name);
+
+        return peer;
+    }
+}
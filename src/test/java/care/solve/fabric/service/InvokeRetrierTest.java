@@ -0,0 +1,151 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.protos.peer.FabricTransaction;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.exception.TransactionEventException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InvokeRetrierTest {
+
+    private HFProperties hfProperties;
+    private MetricRegistry metricRegistry;
+    private ScheduledExecutorService scheduler;
+    private List<Long> delays;
+    private AtomicInteger attempts;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        metricRegistry = new MetricRegistry();
+        delays = new ArrayList<>();
+        attempts = new AtomicInteger();
+        // runs a retry right away, recording its backoff
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS))).thenAnswer(invocation -> {
+            delays.add((Long) invocation.getArguments()[1]);
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        });
+    }
+
+    @Test
+    public void readConflictIsRetriedUntilTheInvokeCommits() throws Exception {
+        CompletableFuture<String> result = retrier().callAsync("put", attempts(
+                failed(new CompletionException(invalidated(FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT))),
+                failed(invalidated(FabricTransaction.TxValidationCode.PHANTOM_READ_CONFLICT)),
+                CompletableFuture.completedFuture("committed")));
+
+        assertEquals("committed", result.get());
+        assertEquals(3, attempts.get());
+        assertEquals(2, metricRegistry.meter("fabric.tx.retries.put").getCount());
+    }
+
+    @Test
+    public void otherValidationCodeIsNotRetried() throws Exception {
+        TransactionEventException invalidated = invalidated(FabricTransaction.TxValidationCode.ENDORSEMENT_POLICY_FAILURE);
+
+        assertSame(invalidated, failureOf(retrier().callAsync("put", attempts(failed(invalidated)))));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void failureBeforeTheCommitIsNotRetried() throws Exception {
+        RuntimeException endorsementFailure = new RuntimeException("Failed transaction: 1 failed from 2");
+
+        assertSame(endorsementFailure, failureOf(retrier().callAsync("put", attempts(failed(endorsementFailure)))));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void givesUpAfterTheMaximumAttempts() throws Exception {
+        TransactionEventException conflict = invalidated(FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT);
+
+        assertSame(conflict, failureOf(retrier().callAsync("put", () -> {
+            attempts.incrementAndGet();
+            return failed(conflict);
+        })));
+        assertEquals(3, attempts.get());
+        assertEquals(1, metricRegistry.meter("fabric.tx.retries.put.exhausted").getCount());
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximumWithJitter() throws Exception {
+        HFProperties.Retry retryConf = hfProperties.getRetry();
+        retryConf.setMaxAttempts(5);
+        retryConf.setInitialBackoffMillis(100);
+        retryConf.setMaxBackoffMillis(250);
+        TransactionEventException conflict = invalidated(FabricTransaction.TxValidationCode.MVCC_READ_CONFLICT);
+
+        failureOf(retrier().callAsync("put", () -> failed(conflict)));
+
+        long[] backoffs = {100, 200, 250, 250};
+        assertEquals(backoffs.length, delays.size());
+        for (int i = 0; i < backoffs.length; i++) {
+            long delay = delays.get(i);
+            assertTrue("attempt " + (i + 1) + " waited " + delay, delay >= backoffs[i] / 2 && delay <= backoffs[i]);
+        }
+    }
+
+    private InvokeRetrier retrier() {
+        return new InvokeRetrier(hfProperties, scheduler, new TransactionMetrics(metricRegistry));
+    }
+
+    @SafeVarargs
+    private final Supplier<CompletableFuture<String>> attempts(CompletableFuture<String>... outcomes) {
+        Iterator<CompletableFuture<String>> next = Arrays.asList(outcomes).iterator();
+
+        return () -> {
+            attempts.incrementAndGet();
+            return next.next();
+        };
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> result) throws InterruptedException {
+        try {
+            result.get();
+            fail();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    private static TransactionEventException invalidated(FabricTransaction.TxValidationCode code) {
+        BlockEvent.TransactionEvent transactionEvent = mock(BlockEvent.TransactionEvent.class);
+        when(transactionEvent.getValidationCode()).thenReturn((byte) code.getNumber());
+
+        return new TransactionEventException("Received invalid transaction event", transactionEvent);
+    }
+
+    private static CompletableFuture<String> failed(Throwable e) {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+
+        return failed;
+    }
+}
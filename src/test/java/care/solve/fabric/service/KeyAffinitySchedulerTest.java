@@ -0,0 +1,95 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KeyAffinitySchedulerTest {
+
+    private static final String[] FIRST = {"k1", "1"};
+    private static final String[] SECOND = {"k1", "2"};
+
+    private TransactionServiceImpl transactionService;
+    private KeyAffinityScheduler scheduler;
+    private CompletableFuture<byte[]> first;
+
+    @Before
+    public void setUp() {
+        transactionService = mock(TransactionServiceImpl.class);
+        scheduler = new KeyAffinityScheduler(transactionService, new HFProperties(), new MetricRegistry());
+        first = new CompletableFuture<>();
+        when(transactionService.sendInvokeTransactionAsync("put", FIRST)).thenReturn(first);
+    }
+
+    @Test
+    public void invokeOnABusyKeyStartsAfterThePreviousOne() {
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k1"), "put", FIRST);
+        CompletableFuture<byte[]> second = new CompletableFuture<>();
+        when(transactionService.sendInvokeTransactionAsync(eq("put"), eq(SECOND), any(CompletionStage.class))).thenReturn(second);
+
+        scheduler.sendInvokeTransactionAsync(Arrays.asList("k2", "k1"), "put", SECOND);
+
+        ArgumentCaptor<CompletionStage> after = ArgumentCaptor.forClass(CompletionStage.class);
+        verify(transactionService).sendInvokeTransactionAsync(eq("put"), eq(SECOND), after.capture());
+        assertFalse(after.getValue().toCompletableFuture().isDone());
+
+        first.completeExceptionally(new RuntimeException("failed"));
+        assertTrue("a failed invoke releases its keys too", after.getValue().toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void invokesOnOtherKeysAreNotHeldBack() {
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k1"), "put", FIRST);
+        when(transactionService.sendInvokeTransactionAsync("put", SECOND)).thenReturn(new CompletableFuture<>());
+
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k2"), "put", SECOND);
+
+        verify(transactionService).sendInvokeTransactionAsync("put", SECOND);
+    }
+
+    @Test
+    public void keyIsFreeOnceItsInvokeIsDone() {
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k1"), "put", FIRST);
+        first.complete(new byte[0]);
+        when(transactionService.sendInvokeTransactionAsync("put", SECOND)).thenReturn(new CompletableFuture<>());
+
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k1"), "put", SECOND);
+
+        verify(transactionService).sendInvokeTransactionAsync("put", SECOND);
+    }
+
+    @Test
+    public void synchronousInvokeWaitsForThePreviousOne() throws Exception {
+        scheduler.sendInvokeTransactionAsync(Collections.singletonList("k1"), "put", FIRST);
+        byte[] payload = {1};
+        when(transactionService.sendInvokeTransaction("put", SECOND)).thenReturn(payload);
+
+        CompletableFuture<byte[]> second = CompletableFuture.supplyAsync(
+                () -> scheduler.sendInvokeTransaction(Collections.singletonList("k1"), "put", SECOND));
+        Thread.sleep(100);
+        verify(transactionService, never()).sendInvokeTransaction("put", SECOND);
+
+        first.complete(new byte[0]);
+        verify(transactionService, timeout(1000)).sendInvokeTransaction("put", SECOND);
+        assertArrayEquals(payload, second.get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,126 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Orderer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrdererPoolTest {
+
+    private static final Collection<ProposalResponse> RESPONSES = Collections.emptyList();
+
+    private HFProperties hfProperties;
+    private MetricRegistry metricRegistry;
+    private CircuitBreakers circuitBreakers;
+    private Channel channel;
+    private User user;
+    private Orderer o1;
+    private Orderer o2;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        hfProperties.getCircuitBreaker().setMinimumCalls(3);
+        metricRegistry = new MetricRegistry();
+        circuitBreakers = new CircuitBreakers(new PeerLatencyTracker(), hfProperties, metricRegistry);
+        o1 = orderer("o1", null);
+        o2 = orderer("o2", null);
+        channel = mock(Channel.class);
+        when(channel.getOrderers()).thenReturn(Arrays.asList(o1, o2));
+        user = mock(User.class);
+    }
+
+    @Test
+    public void rejectedBroadcastFailsOverToTheNextOrderer() {
+        sending(o1, failed(new Exception("NOT_FOUND")));
+        CompletableFuture<BlockEvent.TransactionEvent> accepted = new CompletableFuture<>();
+        sending(o2, accepted);
+
+        assertSame(accepted, pool().broadcast(channel, RESPONSES, user));
+        assertEquals(1, metricRegistry.meter("fabric.orderer.failovers").getCount());
+        assertEquals(1, metricRegistry.meter("fabric.orderer.o1.failures").getCount());
+    }
+
+    @Test
+    public void localFailureIsNotResent() {
+        CompletableFuture<BlockEvent.TransactionEvent> failed = failed(new InvalidArgumentException("not signed"));
+        sending(o1, failed);
+
+        assertSame(failed, pool().broadcast(channel, RESPONSES, user));
+        verify(channel, never()).sendTransaction(eq(RESPONSES), eq(Collections.singletonList(o2)), any(User.class));
+    }
+
+    @Test
+    public void timedOutBroadcastIsNotResent() {
+        Properties properties = new Properties();
+        properties.setProperty("ordererWaitTimeMilliSecs", "0");
+        Orderer slow = orderer("slow", properties);
+        when(channel.getOrderers()).thenReturn(Arrays.asList(slow, o2));
+        CompletableFuture<BlockEvent.TransactionEvent> failed = failed(new Exception("timeout"));
+        sending(slow, failed);
+
+        assertSame(failed, pool().broadcast(channel, RESPONSES, user));
+        verify(channel, never()).sendTransaction(eq(RESPONSES), eq(Collections.singletonList(o2)), any(User.class));
+    }
+
+    @Test
+    public void roundRobinStartsAtTheNextOrdererInTurn() {
+        OrdererPool pool = pool();
+
+        assertEquals(Arrays.asList(o1, o2), pool.select(Arrays.asList(o1, o2)));
+        assertEquals(Arrays.asList(o2, o1), pool.select(Arrays.asList(o1, o2)));
+    }
+
+    @Test
+    public void ordererWithAnOpenBreakerIsSkipped() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreakers.recordFailure("o1", 1000);
+        }
+
+        assertEquals(Collections.singletonList(o2), pool().select(Arrays.asList(o1, o2)));
+    }
+
+    private OrdererPool pool() {
+        return new OrdererPool(circuitBreakers, hfProperties, metricRegistry);
+    }
+
+    private void sending(Orderer orderer, CompletableFuture<BlockEvent.TransactionEvent> result) {
+        when(channel.sendTransaction(RESPONSES, Collections.singletonList(orderer), user)).thenReturn(result);
+    }
+
+    private static Orderer orderer(String name, Properties properties) {
+        Orderer orderer = mock(Orderer.class);
+        when(orderer.getName()).thenReturn(name);
+        when(orderer.getProperties()).thenReturn(properties);
+
+        return orderer;
+    }
+
+    private static CompletableFuture<BlockEvent.TransactionEvent> failed(Exception e) {
+        CompletableFuture<BlockEvent.TransactionEvent> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+
+        return failed;
+    }
+}
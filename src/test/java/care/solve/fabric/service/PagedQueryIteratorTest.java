@@ -0,0 +1,111 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.entity.QueryPage;
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PagedQueryIteratorTest {
+
+    private Map<String, CompletableFuture<ByteString>> pages;
+    private List<String> requested;
+
+    @Before
+    public void setUp() {
+        pages = new HashMap<>();
+        requested = new ArrayList<>();
+        page("", "{\"items\": [{\"k\": 1}, \"two\"], \"bookmark\": \"b1\"}");
+        page("b1", "{\"items\": [3], \"bookmark\": \"b2\"}");
+        page("b2", "{\"items\": [], \"bookmark\": \"\"}");
+    }
+
+    @Test
+    public void yieldsTheItemsOfEveryPageFollowingTheBookmarks() {
+        PagedQueryIterator iterator = iterator();
+
+        List<String> items = new ArrayList<>();
+        iterator.forEachRemaining(item -> items.add(new String(item, UTF_8)));
+
+        assertEquals(Arrays.asList("{\"k\":1}", "\"two\"", "3"), items);
+        assertEquals(Arrays.asList("", "b1", "b2"), requested);
+    }
+
+    @Test
+    public void nextPageIsFetchedOnceThePreviousOneIsReached() {
+        PagedQueryIterator iterator = iterator();
+        assertEquals(Collections.singletonList(""), requested);
+
+        iterator.next();
+        assertEquals(Arrays.asList("", "b1"), requested);
+        iterator.next();
+        assertEquals("two pages at most are held", Arrays.asList("", "b1"), requested);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedPageIsThrown() {
+        CompletableFuture<ByteString> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("peer unavailable"));
+        pages.put("b1", failed);
+        PagedQueryIterator iterator = iterator();
+
+        iterator.next();
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextPastTheLastItemFails() {
+        page("", "{\"items\": [1]}");
+        PagedQueryIterator iterator = iterator();
+
+        iterator.next();
+        assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    @Test
+    public void pageParsingSkipsOtherFields() {
+        QueryPage page = PagedQueryIterator.parsePage(ByteString.copyFromUtf8(
+                "{\"meta\": {\"items\": [0]}, \"items\": [{\"a\": [1, 2]}], \"bookmark\": \"b\"}"));
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("{\"a\":[1,2]}", new String(page.getItems().get(0), UTF_8));
+        assertEquals("b", page.getBookmark());
+        assertFalse(page.isLast());
+    }
+
+    @Test
+    public void pageWithoutBookmarkIsTheLast() {
+        assertTrue(PagedQueryIterator.parsePage(ByteString.copyFromUtf8("{\"items\": [1]}")).isLast());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageMustBeAnObject() {
+        PagedQueryIterator.parsePage(ByteString.copyFromUtf8("[1, 2]"));
+    }
+
+    private PagedQueryIterator iterator() {
+        return new PagedQueryIterator(bookmark -> {
+            requested.add(bookmark);
+            return pages.get(bookmark);
+        });
+    }
+
+    private void page(String bookmark, String json) {
+        pages.put(bookmark, CompletableFuture.completedFuture(ByteString.copyFromUtf8(json)));
+    }
+}
@@ -0,0 +1,137 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.sdk.ChaincodeID;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class QueryResultCacheTest {
+
+    private static final ChaincodeID CHAINCODE = ChaincodeID.newBuilder().setName("cc").setVersion("1").build();
+    private static final ByteString RESULT = ByteString.copyFromUtf8("result");
+
+    private HFProperties hfProperties;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        HFProperties.QueryCache cacheConf = hfProperties.getQueryCache();
+        cacheConf.setEnabled(true);
+        cacheConf.setFunctions(Collections.singletonList("count"));
+        cacheConf.setKeyAddressedFunctions(Collections.singletonList("read"));
+        cacheConf.setMaxPeerLagMillis(0);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void heightResultIsServedUntilTheNextBlock() {
+        QueryResultCache cache = cache();
+
+        query(cache, "count");
+        query(cache, "count");
+        assertEquals(1, loads.get());
+
+        cache.received(Blocks.block(0, "cc", "other"));
+        query(cache, "count");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void keyAddressedResultIsDroppedOnlyByAWriteToItsKey() {
+        QueryResultCache cache = cache();
+
+        query(cache, "read", "k1");
+        cache.received(Blocks.block(0, "cc", "k2"));
+        cache.received(Blocks.block(1, "other-cc", "k1"));
+        query(cache, "read", "k1");
+        assertEquals(1, loads.get());
+
+        cache.received(Blocks.block(2, "cc", "k1"));
+        query(cache, "read", "k1");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void writeWhileLoadingIsNotCached() {
+        QueryResultCache cache = cache();
+
+        CompletableFuture<ByteString> loading = new CompletableFuture<>();
+        CompletableFuture<ByteString> result = cache.get(CHAINCODE, "read", args("k1"), loader(loading));
+        cache.received(Blocks.block(0, "cc", "k1"));
+        loading.complete(RESULT);
+
+        assertEquals(RESULT, result.join());
+        query(cache, "read", "k1");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void blockWhileLoadingIsNotCached() {
+        QueryResultCache cache = cache();
+
+        CompletableFuture<ByteString> loading = new CompletableFuture<>();
+        cache.get(CHAINCODE, "count", args(), loader(loading));
+        cache.received(Blocks.block(0, "cc", "other"));
+        loading.complete(RESULT);
+
+        query(cache, "count");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void resultsAreNotCachedWhileThePeerMayLagBehindABlock() {
+        hfProperties.getQueryCache().setMaxPeerLagMillis(60000);
+        QueryResultCache cache = cache();
+        cache.received(Blocks.block(0, "cc", "k1"));
+
+        query(cache, "count");
+        query(cache, "count");
+        query(cache, "read", "k1");
+        query(cache, "read", "k1");
+        assertEquals(4, loads.get());
+
+        query(cache, "read", "k2");
+        query(cache, "read", "k2");
+        assertEquals("k2 was not written", 5, loads.get());
+    }
+
+    @Test
+    public void otherFunctionsAreNotCached() {
+        QueryResultCache cache = cache();
+
+        query(cache, "list");
+        query(cache, "list");
+        assertEquals(2, loads.get());
+    }
+
+    private QueryResultCache cache() {
+        return new QueryResultCache(hfProperties, new MetricRegistry());
+    }
+
+    private void query(QueryResultCache cache, String func, String... args) {
+        assertEquals(RESULT, cache.get(CHAINCODE, func, args(args), loader(CompletableFuture.completedFuture(RESULT))).join());
+    }
+
+    private Supplier<CompletableFuture<ByteString>> loader(CompletableFuture<ByteString> result) {
+        return () -> {
+            loads.incrementAndGet();
+            return result;
+        };
+    }
+
+    private static byte[][] args(String... args) {
+        return Arrays.stream(args).map(arg -> arg.getBytes(UTF_8)).toArray(byte[][]::new);
+    }
+}
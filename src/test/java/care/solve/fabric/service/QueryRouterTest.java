@@ -0,0 +1,166 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.config.HFProperties;
+import com.codahale.metrics.MetricRegistry;
+import org.hyperledger.fabric.sdk.Peer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueryRouterTest {
+
+    private HFProperties hfProperties;
+    private PeerLatencyTracker tracker;
+    private ExecutorService queryExecutor;
+    private ScheduledExecutorService scheduler;
+    private Peer fast;
+    private Peer slow;
+    private List<String> asked;
+    private CountDownLatch unblock;
+
+    @Before
+    public void setUp() {
+        hfProperties = new HFProperties();
+        // only hedged on failure unless a test shortens it
+        hfProperties.getQuery().setDefaultHedgeDelayMillis(60000);
+        tracker = new PeerLatencyTracker();
+        queryExecutor = Executors.newCachedThreadPool();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        fast = peer("fast");
+        slow = peer("slow");
+        tracker.recordSuccess("slow", TimeUnit.MILLISECONDS.toNanos(50));
+        asked = new CopyOnWriteArrayList<>();
+        unblock = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        queryExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void bestPeerAloneAnswersAQuickQuery() throws Exception {
+        assertEquals("fast", router().route(Arrays.asList(slow, fast), answer(Collections.emptyList())).get(1, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList("fast"), asked);
+    }
+
+    @Test
+    public void slowPrimaryIsHedgedOnTheSecondBestPeer() throws Exception {
+        hfProperties.getQuery().setDefaultHedgeDelayMillis(20);
+
+        String result = router().route(Arrays.asList(slow, fast), answer(Collections.singletonList("fast"), Collections.emptyList()))
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals("slow", result);
+        assertEquals(Arrays.asList("fast", "slow"), asked);
+    }
+
+    @Test
+    public void failedPrimaryIsRetriedWithoutWaitingForTheHedgeDelay() throws Exception {
+        String result = router().route(Arrays.asList(slow, fast), answer(Collections.emptyList(), Collections.singletonList("fast")))
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals("slow", result);
+    }
+
+    @Test
+    public void chaincodeErrorIsTheAnswer() throws Exception {
+        CompletableFuture<String> result = router().route(Arrays.asList(slow, fast), peer -> {
+            asked.add(peer.getName());
+            throw new ChaincodeResponseException(peer.getName(), 500, "no such key");
+        });
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ChaincodeResponseException);
+        }
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList("fast"), asked);
+    }
+
+    @Test
+    public void withoutHedgingAFailureIsNotRetried() throws Exception {
+        hfProperties.getQuery().setHedge(false);
+
+        CompletableFuture<String> result = router().route(Arrays.asList(slow, fast), answer(Collections.emptyList(), Collections.singletonList("fast")));
+
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(Collections.singletonList("fast"), asked);
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void noPeerFailsTheQuery() throws Throwable {
+        try {
+            router().route(Collections.emptyList(), Peer::getName).get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private QueryRouter router() {
+        CircuitBreakers circuitBreakers = new CircuitBreakers(tracker, hfProperties, new MetricRegistry());
+
+        return new QueryRouter(tracker, circuitBreakers, queryExecutor, scheduler, hfProperties);
+    }
+
+    private Function<Peer, String> answer(List<String> blocking) {
+        return answer(blocking, Collections.emptyList());
+    }
+
+    /**
+     * Answers with the peer's name; a blocking peer only answers once the test ends, a failing one throws.
+     */
+    private Function<Peer, String> answer(List<String> blocking, List<String> failing) {
+        return peer -> {
+            asked.add(peer.getName());
+            if (failing.contains(peer.getName())) {
+                throw new IllegalStateException("unavailable");
+            }
+            if (blocking.contains(peer.getName())) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return peer.getName();
+        };
+    }
+
+    private static Peer peer(String name) {
+        Peer peer = mock(Peer.class);
+        when(peer.getName()).thenReturn(name);
+
+        return peer;
+    }
+}
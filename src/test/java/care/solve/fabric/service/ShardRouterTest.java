@@ -0,0 +1,112 @@
+package care.solve.fabric.service;
+
+import care.solve.fabric.codec.Codec;
+import care.solve.fabric.config.HFProperties;
+import care.solve.fabric.entity.RebalancePlan;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardRouterTest {
+
+    private static final List<String> CHANNELS = Arrays.asList("ch1", "ch2", "ch3");
+
+    private ChannelRegistry channelRegistry;
+    private ShardRouter shardRouter;
+
+    @Before
+    public void setUp() {
+        channelRegistry = mock(ChannelRegistry.class);
+        when(channelRegistry.getChannelNames()).thenReturn(new LinkedHashSet<>(CHANNELS));
+
+        shardRouter = new ShardRouter(channelRegistry, new HFProperties(), new MetricRegistry());
+    }
+
+    @Test
+    public void planListsTheKeysMovingToAnAddedChannel() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add("patient-" + i);
+        }
+
+        RebalancePlan plan = shardRouter.planRebalance(Arrays.asList("ch1", "ch2", "ch3", "ch4"), keys);
+
+        assertEquals(keys.size(), plan.getKeyCount());
+        assertEquals(CHANNELS, plan.getCurrentChannels());
+        assertFalse(plan.getMoves().isEmpty());
+        for (RebalancePlan.Move move : plan.getMoves()) {
+            assertEquals(shardRouter.channelOf(move.getKey()), move.getFromChannel());
+            assertEquals("ch4", move.getToChannel());
+        }
+        assertTrue(plan.getMovedFraction() > 0.15 && plan.getMovedFraction() < 0.35);
+    }
+
+    @Test
+    public void planForTheSameChannelsMovesNothing() {
+        RebalancePlan plan = shardRouter.planRebalance(Arrays.asList("ch3", "ch2", "ch1"), Arrays.asList("a", "b", "c", "d"));
+
+        assertEquals(4, plan.getKeyCount());
+        assertTrue(plan.getMoves().isEmpty());
+    }
+
+    @Test
+    public void foldsResultsAsTheyComplete() {
+        List<CompletableFuture<Integer>> results = pendingCountQueries();
+
+        AtomicInteger merges = new AtomicInteger();
+        CompletableFuture<Integer> merged = shardRouter.sendQueryToAllShardsAsync("count", "request", null, null, (a, b) -> {
+            merges.incrementAndGet();
+            return a + b;
+        });
+
+        results.get(2).complete(3);
+        results.get(1).complete(2);
+        assertEquals("the results of the last two channels are merged before the first answers", 1, merges.get());
+        assertFalse(merged.isDone());
+
+        results.get(0).complete(1);
+        assertEquals(6, (int) merged.join());
+    }
+
+    @Test
+    public void failsOnTheFirstFailedChannel() {
+        List<CompletableFuture<Integer>> results = pendingCountQueries();
+
+        CompletableFuture<Integer> merged = shardRouter.sendQueryToAllShardsAsync("count", "request", null, null, Integer::sum);
+        results.get(1).completeExceptionally(new RuntimeException("ch2 is down"));
+
+        assertTrue(merged.isCompletedExceptionally());
+    }
+
+    /**
+     * One uncompleted result per channel, in the order of the channels, for a query of "count".
+     */
+    private List<CompletableFuture<Integer>> pendingCountQueries() {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (String channel : CHANNELS) {
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            results.add(result);
+            TransactionService transactionService = mock(TransactionService.class);
+            doReturn(result).when(transactionService).sendQueryTransactionAsync(eq("count"), any(), any(Codec.class), any(Codec.class));
+            when(channelRegistry.getTransactionService(channel)).thenReturn(transactionService);
+        }
+
+        return results;
+    }
+}